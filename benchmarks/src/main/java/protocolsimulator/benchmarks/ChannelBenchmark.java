@@ -0,0 +1,180 @@
+package protocolsimulator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import protocolsimulator.Input;
+import protocolsimulator.LayerSimulator;
+import protocolsimulator.LinkSettings;
+import protocolsimulator.Segment;
+import protocolsimulator.Simulator;
+import protocolsimulator.TransportProtocol;
+import protocolsimulator.TransportProtocolFactory;
+import protocolsimulator.TransportProtocols;
+
+/**
+ * Measures the per-segment cost of the simulator itself: the link, the
+ * event queue and the timers. The hosts run a ping-pong protocol that
+ * reuses two segments, so that the transport layers allocate nothing, and
+ * the rest of the allocation is the simulator's. Run with
+ * <code>-prof gc</code> and divide <code>gc.alloc.rate.norm</code> by
+ * <code>segments</code> per run to get the allocation per simulated segment,
+ * which should be close to zero apart from the setup of each run. The
+ * shipped protocols allocate their segments on top of this, see
+ * <code>SimulationBenchmark</code>.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelBenchmark
+{
+    private static final String PING_PONG = "ping-pong";
+
+    @Param({"0", "10"})
+    public int lossProbability;
+
+    @Param({"100000"})
+    public int exchanges;
+
+    // The exchanges are split between the flows, so the throughput per
+    // segment shows if the cost grows with the number of hosts
+    @Param({"1", "1000"})
+    public int flows;
+
+    // Run with e.g. -p partitions=1,2,4,8 -p flows=1000 to measure the
+    // speedup of the parallel simulation
+    @Param({"1"})
+    public int partitions;
+
+    static
+    {
+        TransportProtocols.register(PING_PONG, new TransportProtocolFactory()
+        {
+            public TransportProtocol create(String id, LayerSimulator layers, Input input)
+            {
+                return new PingPong(id, layers, input);
+            }
+        });
+    }
+
+    /**
+     * Simulated work per run, reported as rates by JMH
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters
+    {
+        public long segments;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            segments = 0;
+        }
+    }
+
+    @Benchmark
+    public Simulator run(Counters counters)
+    {
+        Input input = new Input(3000, lossProbability, 0, 1, exchanges / flows);
+        input.protocolA = PING_PONG;
+        input.protocolB = PING_PONG;
+        input.seed = 42;
+        input.flows = flows;
+        input.partitions = partitions;
+        // Without transmission time the flows do not queue behind each
+        // other, so every flow makes the same exchanges
+        input.linkAB = LinkSettings.parse("transmission=0,delay=900");
+        input.linkBA = input.linkAB;
+        Simulator simulator = new Simulator(input);
+
+        simulator.run();
+        counters.segments += simulator.getSegmentsSent();
+        return simulator;
+    }
+
+    /**
+     * Host A sends a ping for the message from the application layer and
+     * host B answers every ping with a pong. A sends the next ping when the
+     * pong arrives, until the number of exchanges in the window size of the
+     * input is reached, and sends the ping again when the timer expires.
+     */
+    private static class PingPong implements TransportProtocol
+    {
+        private final LayerSimulator mLayers;
+        private final Segment mSegment;
+        private final int mTimeout, mExchanges;
+        private int mExchangesLeft = 0;
+        private boolean mSender = false;
+
+        PingPong(String id, LayerSimulator layers, Input input)
+        {
+            mLayers = layers;
+            mSegment = new Segment(id, 0, 0, "PPP");
+            mTimeout = input.timerValue;
+            mExchanges = input.windowSize;
+        }
+
+        public void toTransportLayer(String message)
+        {
+            mSender = true;
+            mExchangesLeft = mExchanges;
+            this.ping();
+        }
+
+        public void toTransportLayer(Segment segment)
+        {
+            if(!segment.isCorrect())
+            {
+                return;
+            }
+            if(!mSender)
+            {
+                mLayers.toNetworkLayer(mSegment);
+            }
+            else if(mExchangesLeft > 0)
+            {
+                mLayers.resetTimer();
+
+                if(--mExchangesLeft > 0)
+                {
+                    this.ping();
+                }
+            }
+        }
+
+        public void timerInterrupt()
+        {
+            this.ping();
+        }
+
+        public void timerInterrupt(int timerId)
+        {
+        }
+
+        private void ping()
+        {
+            mLayers.toNetworkLayer(mSegment);
+            mLayers.startTimer(mTimeout);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package protocolsimulator.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import protocolsimulator.BinaryHeapEventQueue;
+import protocolsimulator.CalendarEventQueue;
+import protocolsimulator.Event;
+import protocolsimulator.EventQueue;
+
+/**
+ * Measures event scheduling throughput with the classic hold model: the next
+ * event is removed and rescheduled a random time later, so the number of
+ * pending events stays at the given size.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventQueueBenchmark
+{
+    @Param({"BinaryHeap", "Calendar"})
+    public EventQueue.Type queueType;
+    
+    @Param({"16", "1024", "65536"})
+    public int pendingEvents;
+    
+    private EventQueue mQueue;
+    private long[] mIncrements;
+    private int mNext = 0;
+    
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        
+        mQueue = queueType == EventQueue.Type.Calendar ? new CalendarEventQueue() : new BinaryHeapEventQueue();
+        mIncrements = new long[4096];
+        
+        for(int i = 0; i < mIncrements.length; i++)
+        {
+            // Mix of channel delays and longer timer values
+            mIncrements[i] = random.nextInt(10) == 0 ? 3000 + random.nextInt(1000) : 900 + random.nextInt(200);
+        }
+        for(int i = 0; i < pendingEvents; i++)
+        {
+            mQueue.add(new Event(Event.EventType.NetworkLayer, random.nextInt(1000), null));
+        }
+    }
+    
+    @Benchmark
+    public Event hold()
+    {
+        Event event = mQueue.poll();
+        
+        event.eventTime += mIncrements[mNext++ & (mIncrements.length - 1)];
+        mQueue.add(event);
+        return event;
+    }
+}
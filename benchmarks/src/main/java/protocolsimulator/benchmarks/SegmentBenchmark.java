@@ -0,0 +1,68 @@
+package protocolsimulator.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import protocolsimulator.Segment;
+
+/**
+ * Measures the per-segment costs of the channel: copying a segment,
+ * encoding it to its bytes on the link and verifying its checksum, for
+ * both checksum types and a small and a large payload.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentBenchmark
+{
+    @Param({"Crc32c", "Internet"})
+    public Segment.Checksum checksum;
+    
+    @Param({"3", "1000"})
+    public int payloadSize;
+    
+    private Segment mSegment;
+    
+    @Setup
+    public void setUp()
+    {
+        mSegment = new Segment("A", 17, -1, "Q".repeat(payloadSize));
+        mSegment.setChecksumType(checksum);
+    }
+    
+    @Benchmark
+    public Segment cloneSegment()
+    {
+        return mSegment.clone();
+    }
+    
+    @Benchmark
+    public ByteBuffer encode()
+    {
+        return mSegment.encode();
+    }
+    
+    @Benchmark
+    public boolean isCorrect()
+    {
+        return mSegment.isCorrect();
+    }
+}
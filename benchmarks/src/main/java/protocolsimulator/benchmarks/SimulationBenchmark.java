@@ -0,0 +1,97 @@
+package protocolsimulator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import protocolsimulator.Input;
+import protocolsimulator.Simulator;
+
+/**
+ * Measures complete headless runs of the transport layers. The
+ * score is runs per second, and the <code>segments</code> and
+ * <code>messages</code> counters give simulated segments and delivered
+ * messages per second. Run with <code>-prof gc</code> and divide
+ * <code>gc.alloc.rate.norm</code> by the segments per run, the
+ * <code>segments</code> rate divided by the score, to get the allocation
+ * per simulated segment of the shipped protocols. Unlike
+ * <code>ChannelBenchmark</code> this includes what the protocols allocate:
+ * a segment per message, a segment per ACK and a copy of each data segment
+ * that carries an ACK. Run with <code>-p bidirectional=true</code> and
+ * <code>-p ackDelay=200</code> to measure piggybacked and delayed ACKs.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark
+{
+    @Param({"stop-and-wait", "go-back-n", "selective-repeat", "tcp"})
+    public String protocol;
+    
+    @Param({"1", "8", "64"})
+    public int windowSize;
+    
+    @Param({"0", "10", "30"})
+    public int lossProbability;
+    
+    @Param({"1000"})
+    public int numberOfMessages;
+    
+    @Param({"false"})
+    public boolean bidirectional;
+    
+    @Param({"0"})
+    public int ackDelay;
+    
+    /**
+     * Simulated work per run, reported as rates by JMH
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters
+    {
+        public long segments, messages;
+        
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            segments = 0;
+            messages = 0;
+        }
+    }
+    
+    @Benchmark
+    public Simulator run(Counters counters)
+    {
+        Input input = new Input(3000, lossProbability, 0, numberOfMessages, windowSize);
+        input.protocolA = protocol;
+        input.protocolB = protocol;
+        input.seed = 42;
+        input.bidirectional = bidirectional;
+        input.ackDelay = ackDelay;
+        Simulator simulator = new Simulator(input);
+        
+        simulator.run();
+        counters.segments += simulator.getSegmentsSent();
+        counters.messages += simulator.getDeliveredMessages();
+        return simulator;
+    }
+}
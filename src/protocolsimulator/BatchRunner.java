@@ -0,0 +1,826 @@
+package protocolsimulator;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs simulations without the GUI for every combination of a set of
+ * parameter ranges, and writes the results of each combination as a
+ * comma separated row or as a JSON object on a line of its own. The
+ * results hold the parameters and the metrics of the simulation, see
+ * <code>Simulator.getMetrics</code>. Each combination can be replicated
+ * with independent seeds, and the mean and confidence interval of every
+ * metric written instead, see <code>Replications</code>. The simulations
+ * are run in virtual time on a work-stealing pool using all available
+ * processors.<br /><br />
+ *
+ * Each parameter is given as a single value (<code>20</code>), a list
+ * (<code>10,20,40</code>) or a range with an optional step
+ * (<code>0:40:10</code>, the end is inclusive).<br /><br />
+ *
+ * <code>java protocolsimulator.BatchRunner --loss 0:40:10 --timer 2000:5000:1000 --window 1,2,4,8</code>
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class BatchRunner
+{
+    private static final String USAGE =
+        "usage: BatchRunner [--loss RANGE] [--corruption RANGE] [--window RANGE]\n" +
+        "                   [--timer RANGE] [--messages RANGE] [--protocol NAMES]\n" +
+        "                   [--protocol-a NAMES] [--protocol-b NAMES] [--timer-mode MODES]\n" +
+        "                   [--congestion None,Reno,NewReno,Cubic] [--link LINKS] [--link-ba LINK]\n" +
+        "                   [--payload RANGE] [--checksum Crc32c,Internet] [--traffic PATTERNS]\n" +
+        "                   [--flows RANGE] [--partitions N] [--direction DIRECTIONS] [--ack-delay RANGE]\n" +
+        "                   [--time-limit MS] [--queue BinaryHeap|Calendar]\n" +
+        "                   [--seed RANGE] [--threads N] [--output FILE] [--format csv|json]\n" +
+        "                   [--replications N] [--precision FRACTION] [--precision-metric NAME]\n" +
+        "                   [--trace DIRECTORY]\n" +
+        "RANGE is a value (20), a list (10,20,40) or a range from:to[:step] (0:40:10)\n" +
+        "NAMES is a list of protocols (stop-and-wait,go-back-n,selective-repeat,tcp),\n" +
+        "--protocol sets both hosts, host B uses the protocol of host A unless --protocol-b is given\n" +
+        "MODES is a list of timer modes (fixed,adaptive), --timer is the initial timeout when adaptive\n" +
+        "LINK is a link (bandwidth=64k,delay=200,queue=20,red) with impairments\n" +
+        "(loss=0.5,corruption=0.1,burst=1:30,jitter=uniform:300,duplicate=1), LINKS a list separated by ;\n" +
+        "--link sets both directions, B to A uses the link from A to B unless --link-ba is given\n" +
+        "--payload is the size of the messages in bytes\n" +
+        "PATTERNS is a list separated by ; of constant:MS, poisson:MS, onoff:MS:ON:OFF or file:PATH\n" +
+        "--flows is the number of sending hosts, each with its own receiving host, that share the links\n" +
+        "DIRECTIONS is a list of one-way,bidirectional, bidirectional flows also send messages back\n" +
+        "--ack-delay is the longest time in ms an ACK waits for a data segment to piggyback on\n" +
+        "--partitions simulates the flows in up to N groups in parallel, not with --trace\n" +
+        "--format json writes a JSON object per line instead of comma separated rows\n" +
+        "--replications runs up to N replications of each combination, seeded from --seed, and writes\n" +
+        "the mean and 95 % confidence interval of each metric. They stop early when the interval of\n" +
+        "--precision-metric (goodput) is within --precision (0.05 is 5 %) of its mean";
+    private int[] mLoss = {20}, mCorruption = {20}, mWindowSize = {2}, mTimer = {3000}, mMessages = {5};
+    private int[] mPayloadSize = {3}, mFlows = {1}, mAckDelay = {0};
+    private int[] mSeeds = {new Random().nextInt(Integer.MAX_VALUE)};
+    private String[] mProtocolsA = {TransportProtocols.GO_BACK_N}, mProtocolsB = null;
+    private boolean[] mAdaptiveTimer = {false}, mBidirectional = {false};
+    private CongestionControl.Type[] mCongestionControl = {CongestionControl.Type.None};
+    private Segment.Checksum[] mChecksum = {Segment.Checksum.Crc32c};
+    private String[] mLinks = {""}, mTraffic = {""};
+    private String mLinkBA = null;
+    private EventQueue.Type mEventQueueType = EventQueue.Type.BinaryHeap;
+    private long mTimeLimit = 0;
+    private int mThreads = Runtime.getRuntime().availableProcessors(), mPartitions = 1;
+    private String mOutput = null, mTraceDirectory = null;
+    private boolean mJson = false;
+    private int mReplications = 1;
+    private double mPrecision = 0;
+    private String mPrecisionMetric = "goodput";
+    private PrintWriter mWriter = null;
+    private boolean mHeaderWritten = false;
+
+    /**
+     * Program entry point for batch runs
+     *
+     * @param args Parameter ranges, see the class description
+     */
+    public static void main(String[] args)
+    {
+        BatchRunner runner = new BatchRunner();
+
+        try
+        {
+            runner.parseArguments(args);
+        }
+        catch(Exception e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try
+        {
+            runner.run();
+        }
+        catch(IOException e)
+        {
+            System.err.println("could not write results: " + e.getMessage());
+            System.exit(1);
+        }
+        catch(IllegalArgumentException | UncheckedIOException e)
+        {
+            // E.g. a replayed message file that is invalid or cannot be read
+            System.err.println(rootMessage(e));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gets the message of an exception from a simulation. An exception
+     * thrown in a worker thread of the pool is rethrown as a copy that
+     * has the original as its cause.
+     *
+     * @param e The exception
+     * @return The message of the original exception
+     */
+    static String rootMessage(RuntimeException e)
+    {
+        Throwable original = e;
+
+        while(original.getCause() != null && original.getCause().getClass() == original.getClass())
+        {
+            original = original.getCause();
+        }
+        return original.getMessage();
+    }
+
+    /**
+     * Runs all combinations of the parameters and writes the results
+     *
+     * @throws IOException If the results could not be written
+     */
+    public void run() throws IOException
+    {
+        mWriter = new PrintWriter(mOutput == null ? new OutputStreamWriter(System.out) : new FileWriter(mOutput));
+
+        ForkJoinPool pool = new ForkJoinPool(mThreads);
+
+        try
+        {
+            pool.invoke(new Sweep(0, this.numberOfConfigurations()));
+        }
+        finally
+        {
+            pool.shutdown();
+            mWriter.flush();
+
+            if(mOutput != null)
+            {
+                mWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Parses the command line arguments
+     *
+     * @param args Command line arguments
+     * @throws Exception If an argument is invalid
+     */
+    void parseArguments(String[] args) throws Exception
+    {
+        for(int i = 0; i < args.length; i++)
+        {
+            String option = args[i];
+
+            if(i + 1 >= args.length)
+            {
+                throw new Exception("missing value for " + option);
+            }
+            String value = args[++i];
+
+            if(option.equals("--loss"))
+            {
+                mLoss = parseRange(value, 0, 99);
+            }
+            else if(option.equals("--corruption"))
+            {
+                mCorruption = parseRange(value, 0, 99);
+            }
+            else if(option.equals("--window"))
+            {
+                mWindowSize = parseRange(value, 1, Integer.MAX_VALUE);
+            }
+            else if(option.equals("--timer"))
+            {
+                // A zero timer would expire again at the same simulated time forever
+                mTimer = parseRange(value, 1, Integer.MAX_VALUE);
+            }
+            else if(option.equals("--messages"))
+            {
+                mMessages = parseRange(value, 1, Integer.MAX_VALUE);
+            }
+            else if(option.equals("--seed"))
+            {
+                mSeeds = parseRange(value, 0, Integer.MAX_VALUE);
+            }
+            else if(option.equals("--protocol"))
+            {
+                mProtocolsA = parseProtocols(value);
+                mProtocolsB = null;
+            }
+            else if(option.equals("--protocol-a"))
+            {
+                mProtocolsA = parseProtocols(value);
+            }
+            else if(option.equals("--protocol-b"))
+            {
+                mProtocolsB = parseProtocols(value);
+            }
+            else if(option.equals("--timer-mode"))
+            {
+                String[] modes = value.split(",");
+                mAdaptiveTimer = new boolean[modes.length];
+
+                for(int j = 0; j < modes.length; j++)
+                {
+                    if(modes[j].trim().equals("adaptive"))
+                    {
+                        mAdaptiveTimer[j] = true;
+                    }
+                    else if(!modes[j].trim().equals("fixed"))
+                    {
+                        throw new Exception("unknown timer mode " + modes[j]);
+                    }
+                }
+            }
+            else if(option.equals("--congestion"))
+            {
+                String[] types = value.split(",");
+                mCongestionControl = new CongestionControl.Type[types.length];
+
+                for(int j = 0; j < types.length; j++)
+                {
+                    try
+                    {
+                        mCongestionControl[j] = CongestionControl.Type.valueOf(types[j].trim());
+                    }
+                    catch(IllegalArgumentException e)
+                    {
+                        throw new Exception("unknown congestion control " + types[j]);
+                    }
+                }
+            }
+            else if(option.equals("--link"))
+            {
+                mLinks = value.split(";");
+
+                for(String link : mLinks)
+                {
+                    LinkSettings.parse(link);
+                }
+            }
+            else if(option.equals("--link-ba"))
+            {
+                LinkSettings.parse(value);
+                mLinkBA = value;
+            }
+            else if(option.equals("--payload"))
+            {
+                // The length field of the segment header has 16 bits
+                mPayloadSize = parseRange(value, 1, Segment.MAX_PAYLOAD_SIZE);
+            }
+            else if(option.equals("--checksum"))
+            {
+                String[] types = value.split(",");
+                mChecksum = new Segment.Checksum[types.length];
+
+                for(int j = 0; j < types.length; j++)
+                {
+                    try
+                    {
+                        mChecksum[j] = Segment.Checksum.valueOf(types[j].trim());
+                    }
+                    catch(IllegalArgumentException e)
+                    {
+                        throw new Exception("unknown checksum " + types[j]);
+                    }
+                }
+            }
+            else if(option.equals("--flows"))
+            {
+                // Two hosts per flow, and the trace numbers hosts with a short
+                mFlows = parseRange(value, 1, Short.MAX_VALUE / 2);
+            }
+            else if(option.equals("--direction"))
+            {
+                String[] directions = value.split(",");
+                mBidirectional = new boolean[directions.length];
+
+                for(int j = 0; j < directions.length; j++)
+                {
+                    if(directions[j].trim().equals("bidirectional"))
+                    {
+                        mBidirectional[j] = true;
+                    }
+                    else if(!directions[j].trim().equals("one-way"))
+                    {
+                        throw new Exception("unknown direction " + directions[j]);
+                    }
+                }
+            }
+            else if(option.equals("--ack-delay"))
+            {
+                mAckDelay = parseRange(value, 0, Integer.MAX_VALUE);
+            }
+            else if(option.equals("--traffic"))
+            {
+                mTraffic = value.split(";");
+
+                for(String traffic : mTraffic)
+                {
+                    TrafficSettings.parse(traffic);
+                }
+            }
+            else if(option.equals("--time-limit"))
+            {
+                // Stops runs that never finish, e.g. go-back-n flooding the channel
+                mTimeLimit = parseRange(value, 1, Integer.MAX_VALUE)[0];
+            }
+            else if(option.equals("--queue"))
+            {
+                try
+                {
+                    mEventQueueType = EventQueue.Type.valueOf(value);
+                }
+                catch(IllegalArgumentException e)
+                {
+                    throw new Exception("unknown event queue " + value);
+                }
+            }
+            else if(option.equals("--threads"))
+            {
+                mThreads = parseRange(value, 1, Short.MAX_VALUE)[0];
+            }
+            else if(option.equals("--partitions"))
+            {
+                mPartitions = parseRange(value, 1, Short.MAX_VALUE)[0];
+            }
+            else if(option.equals("--output"))
+            {
+                mOutput = value;
+            }
+            else if(option.equals("--format"))
+            {
+                if(!value.equals("csv") && !value.equals("json"))
+                {
+                    throw new Exception("unknown format " + value);
+                }
+                mJson = value.equals("json");
+            }
+            else if(option.equals("--replications"))
+            {
+                mReplications = parseRange(value, 1, Integer.MAX_VALUE)[0];
+            }
+            else if(option.equals("--precision"))
+            {
+                try
+                {
+                    mPrecision = Double.parseDouble(value);
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new Exception("invalid precision " + value);
+                }
+                if(!(mPrecision > 0 && mPrecision < 1))
+                {
+                    throw new Exception("invalid precision " + value);
+                }
+            }
+            else if(option.equals("--precision-metric"))
+            {
+                // Every simulation has the same metrics
+                if(!new Simulator(new Input(1, 0, 0, 1, 1)).getMetrics().getColumnNames().contains(value))
+                {
+                    throw new Exception("unknown metric " + value);
+                }
+                mPrecisionMetric = value;
+            }
+            else if(option.equals("--trace"))
+            {
+                mTraceDirectory = value;
+            }
+            else
+            {
+                throw new Exception("unknown option " + option);
+            }
+        }
+    }
+
+    /**
+     * Parses a parameter range
+     *
+     * @param text A value, a comma separated list or a range from:to[:step]
+     * @param min Smallest allowed value
+     * @param max Largest allowed value
+     * @return The values in the range
+     * @throws Exception If the range is invalid
+     */
+    static int[] parseRange(String text, int min, int max) throws Exception
+    {
+        List<Integer> values = new ArrayList<Integer>();
+
+        try
+        {
+            if(text.contains(":"))
+            {
+                String[] parts = text.split(":");
+
+                if(parts.length > 3)
+                {
+                    throw new Exception("invalid range " + text);
+                }
+                long from = Integer.parseInt(parts[0]);
+                long to = Integer.parseInt(parts[1]);
+                long step = parts.length == 3 ? Integer.parseInt(parts[2]) : 1;
+
+                if(step < 1 || to < from)
+                {
+                    throw new Exception("invalid range " + text);
+                }
+                for(long value = from; value <= to; value += step)
+                {
+                    values.add((int)value);
+                }
+            }
+            else
+            {
+                for(String value : text.split(","))
+                {
+                    values.add(Integer.parseInt(value.trim()));
+                }
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            throw new Exception("invalid value, only digits can be used: " + text);
+        }
+
+        int[] range = new int[values.size()];
+
+        for(int i = 0; i < range.length; i++)
+        {
+            range[i] = values.get(i);
+
+            if(range[i] < min || range[i] > max)
+            {
+                throw new Exception("value " + range[i] + " is not between " + min + " and " + max);
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Parses a list of protocol names
+     *
+     * @param text Comma separated names of registered protocols
+     * @return The names
+     * @throws Exception If a protocol is not registered
+     */
+    static String[] parseProtocols(String text) throws Exception
+    {
+        String[] protocols = text.split(",");
+
+        for(int i = 0; i < protocols.length; i++)
+        {
+            protocols[i] = protocols[i].trim();
+
+            if(!TransportProtocols.isRegistered(protocols[i]))
+            {
+                throw new Exception("unknown protocol " + protocols[i]);
+            }
+        }
+        return protocols;
+    }
+
+    private int numberOfConfigurations()
+    {
+        return mLoss.length * mCorruption.length * mWindowSize.length * mTimer.length * mMessages.length * mSeeds.length * mProtocolsA.length
+            * (mProtocolsB == null ? 1 : mProtocolsB.length) * mAdaptiveTimer.length * mCongestionControl.length
+            * mPayloadSize.length * mChecksum.length * mFlows.length * mBidirectional.length * mAckDelay.length
+            * mTraffic.length * mLinks.length;
+    }
+
+    /**
+     * Builds the input for one combination of the parameters
+     *
+     * @param index Index of the combination
+     * @return The input
+     */
+    private Input configuration(int index)
+    {
+        int loss = mLoss[index % mLoss.length];
+        index /= mLoss.length;
+        int corruption = mCorruption[index % mCorruption.length];
+        index /= mCorruption.length;
+        int windowSize = mWindowSize[index % mWindowSize.length];
+        index /= mWindowSize.length;
+        int timer = mTimer[index % mTimer.length];
+        index /= mTimer.length;
+        int messages = mMessages[index % mMessages.length];
+        index /= mMessages.length;
+        int seed = mSeeds[index % mSeeds.length];
+        index /= mSeeds.length;
+        String protocolA = mProtocolsA[index % mProtocolsA.length];
+        index /= mProtocolsA.length;
+        String protocolB = mProtocolsB == null ? protocolA : mProtocolsB[index % mProtocolsB.length];
+        index /= mProtocolsB == null ? 1 : mProtocolsB.length;
+        boolean adaptiveTimer = mAdaptiveTimer[index % mAdaptiveTimer.length];
+        index /= mAdaptiveTimer.length;
+        CongestionControl.Type congestionControl = mCongestionControl[index % mCongestionControl.length];
+        index /= mCongestionControl.length;
+        int payloadSize = mPayloadSize[index % mPayloadSize.length];
+        index /= mPayloadSize.length;
+        Segment.Checksum checksum = mChecksum[index % mChecksum.length];
+        index /= mChecksum.length;
+        int flows = mFlows[index % mFlows.length];
+        index /= mFlows.length;
+        boolean bidirectional = mBidirectional[index % mBidirectional.length];
+        index /= mBidirectional.length;
+        int ackDelay = mAckDelay[index % mAckDelay.length];
+        index /= mAckDelay.length;
+        String traffic = mTraffic[index % mTraffic.length];
+        index /= mTraffic.length;
+        String link = mLinks[index % mLinks.length];
+
+        Input input = new Input(timer, loss, corruption, messages, windowSize);
+        input.eventQueueType = mEventQueueType;
+        input.seed = seed;
+        input.protocolA = protocolA;
+        input.protocolB = protocolB;
+        input.adaptiveTimer = adaptiveTimer;
+        input.congestionControl = congestionControl;
+        input.payloadSize = payloadSize;
+        input.checksum = checksum;
+        input.flows = flows;
+        input.partitions = mPartitions;
+        input.bidirectional = bidirectional;
+        input.ackDelay = ackDelay;
+        input.traffic = TrafficSettings.parse(traffic);
+        input.linkAB = LinkSettings.parse(link);
+        input.linkBA = LinkSettings.parse(mLinkBA == null ? link : mLinkBA);
+        input.timeLimit = mTimeLimit;
+        return input;
+    }
+
+    /**
+     * Gets the position in the list of links of a combination, for the
+     * name of the trace file
+     *
+     * @param index Index of the combination
+     * @return Position of the link
+     */
+    private int linkIndex(int index)
+    {
+        int others = this.numberOfConfigurations() / mLinks.length;
+
+        return index / others % mLinks.length;
+    }
+
+    /**
+     * Gets the position in the list of traffic patterns of a combination,
+     * for the name of the trace file
+     *
+     * @param index Index of the combination
+     * @return Position of the traffic pattern
+     */
+    private int trafficIndex(int index)
+    {
+        int others = this.numberOfConfigurations() / (mLinks.length * mTraffic.length);
+
+        return index / others % mTraffic.length;
+    }
+
+    private void runConfiguration(int index)
+    {
+        Input input = this.configuration(index);
+        Map<String, Object> results = new LinkedHashMap<String, Object>();
+
+        results.put("protocolA", input.protocolA);
+        results.put("protocolB", input.protocolB);
+        results.put("loss", input.lossProbability);
+        results.put("corruption", input.corruptionProbability);
+        results.put("windowSize", input.windowSize);
+        results.put("timer", input.timerValue);
+        results.put("timerMode", input.adaptiveTimer ? "adaptive" : "fixed");
+        results.put("congestion", input.congestionControl.toString());
+        results.put("linkAB", input.linkAB.toString());
+        results.put("linkBA", input.linkBA.toString());
+        results.put("payloadSize", input.payloadSize);
+        results.put("checksum", input.checksum.toString());
+        results.put("flows", input.flows);
+        results.put("direction", input.bidirectional ? "bidirectional" : "one-way");
+        results.put("ackDelay", input.ackDelay);
+        results.put("traffic", input.traffic.toString());
+        results.put("messages", input.numberOfMessages);
+        results.put("seed", input.seed);
+
+        if(mReplications > 1)
+        {
+            this.runReplications(input, results);
+        }
+        else
+        {
+            this.runSimulation(index, input, results);
+        }
+    }
+
+    private void runSimulation(int index, Input input, Map<String, Object> results)
+    {
+        Simulator simulator = new Simulator(input);
+        long start = System.currentTimeMillis();
+        String fileName = null;
+
+        if(mTraceDirectory != null)
+        {
+            fileName = input.protocolA + "-" + input.protocolB + "-loss" + input.lossProbability + "-corruption" + input.corruptionProbability
+                + "-window" + input.windowSize + "-timer" + input.timerValue + (input.adaptiveTimer ? "-adaptive" : "-fixed")
+                + "-" + input.congestionControl + "-payload" + input.payloadSize + "-" + input.checksum + "-flows" + input.flows
+                + (input.bidirectional ? "-bidirectional" : "-one-way") + "-ackdelay" + input.ackDelay + "-traffic" + this.trafficIndex(index) + "-link" + this.linkIndex(index) + "-messages" + input.numberOfMessages + "-seed" + input.seed + ".trace";
+
+            try
+            {
+                simulator.setTraceFile(new File(mTraceDirectory, fileName).getPath());
+            }
+            catch(IOException e)
+            {
+                System.err.println("could not write trace " + fileName + ": " + e.getMessage());
+            }
+        }
+
+        simulator.run();
+
+        if(simulator.getTraceError() != null)
+        {
+            System.err.println("could not write trace " + fileName + ": " + simulator.getTraceError());
+        }
+        results.put("completed", simulator.isCompleted());
+        results.put("correct", simulator.isCorrect());
+        results.put("simulatedTime", simulator.getCurrentTime());
+        results.put("wallTime", System.currentTimeMillis() - start);
+        results.put("divergence", simulator.isCorrect() ? "" : simulator.getDivergence());
+
+        Metrics metrics = simulator.getMetrics();
+
+        this.write(results, metrics.getColumnNames(), metrics.getColumnValues(), metrics.toJson());
+    }
+
+    /**
+     * Runs the replications of a combination and writes the mean and the
+     * half width of the 95 % confidence interval of every metric
+     */
+    private void runReplications(Input input, Map<String, Object> results)
+    {
+        Replications replications = new Replications(input);
+        long start = System.currentTimeMillis();
+
+        replications.maxReplications = mReplications;
+        replications.precision = mPrecision;
+        replications.precisionMetric = mPrecisionMetric;
+        // Already in the pool of the sweep
+        replications.run(null);
+
+        results.put("replications", replications.getReplications());
+        results.put("correct", replications.getCorrect());
+        results.put("wallTime", System.currentTimeMillis() - start);
+
+        List<String> names = new ArrayList<String>(), values = new ArrayList<String>();
+        StringBuilder json = new StringBuilder("{");
+
+        for(String name : replications.getNames())
+        {
+            Statistics statistics = replications.getStatistics(name);
+            String mean = Metrics.format(statistics.getMean()), halfWidth = Metrics.format(statistics.getHalfWidth());
+
+            names.add(name + ".mean");
+            names.add(name + ".ci");
+            values.add(mean);
+            values.add(halfWidth);
+            json.append(json.length() > 1 ? "," : "").append(quote(name, true)).append(":{\"mean\":").append(mean).append(",\"ci\":").append(halfWidth).append('}');
+        }
+        this.write(results, names, values, json.append('}').toString());
+    }
+
+    /**
+     * Writes the results of a combination
+     *
+     * @param results The parameters and the results that are not metrics
+     * @param names Names of the metric columns
+     * @param values Values of the metric columns
+     * @param json The metrics as a JSON object
+     */
+    private void write(Map<String, Object> results, List<String> names, List<String> values, String json)
+    {
+        String line;
+
+        if(mJson)
+        {
+            StringBuilder object = new StringBuilder("{");
+
+            for(Map.Entry<String, Object> entry : results.entrySet())
+            {
+                object.append(quote(entry.getKey(), true)).append(':').append(format(entry.getValue(), true)).append(',');
+            }
+            line = object.append("\"metrics\":").append(json).append('}').toString();
+        }
+        else
+        {
+            StringBuilder row = new StringBuilder();
+
+            for(Object value : results.values())
+            {
+                row.append(format(value, false)).append(',');
+            }
+            line = row.append(String.join(",", values)).toString();
+        }
+
+        synchronized(mWriter)
+        {
+            // Every simulation registers the same metrics, so the header can
+            // be taken from the first one that finishes
+            if(!mJson && !mHeaderWritten)
+            {
+                mWriter.println(String.join(",", results.keySet()) + "," + String.join(",", names));
+                mHeaderWritten = true;
+            }
+            mWriter.println(line);
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Formats a result as a CSV field or a JSON value
+     *
+     * @param value A number, a boolean or a string
+     * @param json true for JSON, false for CSV
+     * @return The formatted value
+     */
+    private static String format(Object value, boolean json)
+    {
+        return value instanceof String ? quote((String)value, json) : String.valueOf(value);
+    }
+
+    /**
+     * Quotes a string as a CSV field or a JSON string. In CSV only strings
+     * that contain separators or quotes are quoted.
+     *
+     * @param text The string
+     * @param json true for JSON, false for CSV
+     * @return The quoted string
+     */
+    private static String quote(String text, boolean json)
+    {
+        if(json)
+        {
+            StringBuilder quoted = new StringBuilder("\"");
+
+            for(char c : text.toCharArray())
+            {
+                if(c == '"' || c == '\\')
+                {
+                    quoted.append('\\').append(c);
+                }
+                else if(c < ' ')
+                {
+                    quoted.append(String.format("\\u%04x", (int)c));
+                }
+                else
+                {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+        if(text.contains(",") || text.contains("\"") || text.contains(";") || text.contains("\n"))
+        {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+
+    /**
+     * Task that runs a range of combinations, split in halves so that idle
+     * workers can steal the other half
+     */
+    private class Sweep extends RecursiveAction
+    {
+        private static final long serialVersionUID = 3520985227469473839L;
+        private final int mFrom, mTo;
+
+        Sweep(int from, int to)
+        {
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(mTo - mFrom == 1)
+            {
+                runConfiguration(mFrom);
+            }
+            else if(mTo > mFrom)
+            {
+                int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new Sweep(mFrom, middle), new Sweep(middle, mTo));
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package protocolsimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Affects every segment independently with the same probability
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class BernoulliLossModel implements LossModel
+{
+    private final double mProbability;
+
+    /**
+     * Constructs a BernoulliLossModel
+     *
+     * @param probability Probability in percent (0 - 100) that a segment is affected
+     */
+    public BernoulliLossModel(double probability)
+    {
+        mProbability = probability;
+    }
+
+    @Override
+    public boolean isAffected(SplittableRandom random)
+    {
+        return random.nextDouble() * 100 < mProbability;
+    }
+}
@@ -0,0 +1,178 @@
+package protocolsimulator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Event queue implemented as a binary min-heap stored in an array.
+ * Adding and removing events takes O(log n) time.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class BinaryHeapEventQueue implements EventQueue
+{
+    private Event[] mHeap;
+    private int mSize = 0;
+    private long mSequence = 0;
+    
+    /**
+     * Constructs an empty BinaryHeapEventQueue
+     */
+    public BinaryHeapEventQueue()
+    {
+        mHeap = new Event[64];
+    }
+    
+    @Override
+    public void add(Event event)
+    {
+        event.sequence = mSequence++;
+        if(mSize == mHeap.length)
+        {
+            mHeap = Arrays.copyOf(mHeap, mSize * 2);
+        }
+        siftUp(mSize++, event);
+    }
+    
+    @Override
+    public Event poll()
+    {
+        this.discardCancelled();
+        if(mSize == 0)
+        {
+            return null;
+        }
+        Event first = mHeap[0];
+        removeAt(0);
+        return first;
+    }
+    
+    @Override
+    public Event peek()
+    {
+        this.discardCancelled();
+        return mSize == 0 ? null : mHeap[0];
+    }
+    
+    @Override
+    public boolean remove(Event event)
+    {
+        for(int i = 0; i < mSize; i++)
+        {
+            if(mHeap[i] == event)
+            {
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public int size()
+    {
+        return mSize;
+    }
+    
+    @Override
+    public boolean isEmpty()
+    {
+        return this.peek() == null;
+    }
+    
+    /**
+     * Iterates over the events in heap order, not in event time order
+     */
+    @Override
+    public Iterator<Event> iterator()
+    {
+        return new Iterator<Event>()
+        {
+            private int mIndex = 0;
+            
+            public boolean hasNext()
+            {
+                return mIndex < mSize;
+            }
+            public Event next()
+            {
+                if(mIndex >= mSize)
+                {
+                    throw new NoSuchElementException();
+                }
+                return mHeap[mIndex++];
+            }
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    private void discardCancelled()
+    {
+        while(mSize > 0 && mHeap[0].cancelled)
+        {
+            Event cancelled = mHeap[0];
+            
+            removeAt(0);
+            cancelled.release();
+        }
+    }
+    
+    private void removeAt(int index)
+    {
+        Event last = mHeap[--mSize];
+        mHeap[mSize] = null;
+        
+        if(index < mSize)
+        {
+            siftDown(index, last);
+            if(mHeap[index] == last)
+            {
+                siftUp(index, last);
+            }
+        }
+    }
+    
+    private void siftUp(int index, Event event)
+    {
+        while(index > 0)
+        {
+            int parent = (index - 1) >>> 1;
+            
+            if(event.compareTo(mHeap[parent]) >= 0)
+            {
+                break;
+            }
+            mHeap[index] = mHeap[parent];
+            index = parent;
+        }
+        mHeap[index] = event;
+    }
+    
+    private void siftDown(int index, Event event)
+    {
+        int half = mSize >>> 1;
+        
+        while(index < half)
+        {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            
+            if(right < mSize && mHeap[right].compareTo(mHeap[child]) < 0)
+            {
+                child = right;
+            }
+            if(event.compareTo(mHeap[child]) <= 0)
+            {
+                break;
+            }
+            mHeap[index] = mHeap[child];
+            index = child;
+        }
+        mHeap[index] = event;
+    }
+}
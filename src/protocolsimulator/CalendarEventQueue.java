@@ -0,0 +1,303 @@
+package protocolsimulator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Event queue implemented as a calendar queue (R. Brown, 1988). Events are
+ * hashed on event time into buckets that each cover one interval of time, a
+ * "day", of a cyclic "year". Each bucket is kept sorted, and the queue is
+ * resized when the number of events grows or shrinks so that a bucket holds
+ * only a few events. Adding and removing events takes O(1) amortized time
+ * when events are spread evenly in time.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class CalendarEventQueue implements EventQueue
+{
+    private static final int MIN_BUCKETS = 16;
+    private static final int SAMPLE_SIZE = 25;
+    private Event[][] mBuckets;
+    private int[] mCounts;
+    private int mSize = 0, mLastBucket = 0;
+    private long mWidth, mBucketTop;
+    private long mSequence = 0;
+    
+    /**
+     * Constructs an empty CalendarEventQueue
+     */
+    public CalendarEventQueue()
+    {
+        this.initialize(MIN_BUCKETS, 100, 0);
+    }
+    
+    @Override
+    public void add(Event event)
+    {
+        event.sequence = mSequence++;
+        this.insert(event);
+        
+        if(++mSize > 2 * mBuckets.length)
+        {
+            this.resize(2 * mBuckets.length);
+        }
+    }
+    
+    @Override
+    public Event poll()
+    {
+        int bucket = this.findNext();
+        
+        if(bucket < 0)
+        {
+            return null;
+        }
+        Event first = mBuckets[bucket][--mCounts[bucket]];
+        mBuckets[bucket][mCounts[bucket]] = null;
+        
+        if(--mSize < mBuckets.length / 2 && mBuckets.length > MIN_BUCKETS)
+        {
+            this.resize(mBuckets.length / 2);
+        }
+        return first;
+    }
+    
+    @Override
+    public Event peek()
+    {
+        int bucket = this.findNext();
+        
+        return bucket < 0 ? null : mBuckets[bucket][mCounts[bucket] - 1];
+    }
+    
+    @Override
+    public boolean remove(Event event)
+    {
+        int bucket = this.bucketOf(event.eventTime);
+        Event[] events = mBuckets[bucket];
+        
+        for(int i = 0; i < mCounts[bucket]; i++)
+        {
+            if(events[i] == event)
+            {
+                System.arraycopy(events, i + 1, events, i, mCounts[bucket] - i - 1);
+                events[--mCounts[bucket]] = null;
+                mSize--;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public int size()
+    {
+        return mSize;
+    }
+    
+    @Override
+    public boolean isEmpty()
+    {
+        return this.peek() == null;
+    }
+    
+    /**
+     * Iterates over the events bucket by bucket, not in event time order
+     */
+    @Override
+    public Iterator<Event> iterator()
+    {
+        return new Iterator<Event>()
+        {
+            private int mBucket = 0, mIndex = 0;
+            
+            public boolean hasNext()
+            {
+                while(mBucket < mBuckets.length && mIndex >= mCounts[mBucket])
+                {
+                    mBucket++;
+                    mIndex = 0;
+                }
+                return mBucket < mBuckets.length;
+            }
+            public Event next()
+            {
+                if(!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return mBuckets[mBucket][mIndex++];
+            }
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    private void initialize(int numberOfBuckets, long width, long startTime)
+    {
+        long day = startTime / width;
+        
+        mBuckets = new Event[numberOfBuckets][];
+        mCounts = new int[numberOfBuckets];
+        mWidth = width;
+        mLastBucket = (int)(day & (numberOfBuckets - 1));
+        mBucketTop = (day + 1) * width;
+    }
+    
+    private int bucketOf(long time)
+    {
+        return (int)((time / mWidth) & (mBuckets.length - 1));
+    }
+    
+    /**
+     * Inserts the event into its bucket, which is sorted with the next event last
+     * 
+     * @param event Event to insert
+     */
+    private void insert(Event event)
+    {
+        int bucket = this.bucketOf(event.eventTime);
+        Event[] events = mBuckets[bucket];
+        int count = mCounts[bucket];
+        
+        if(events == null)
+        {
+            events = mBuckets[bucket] = new Event[4];
+        }
+        else if(count == events.length)
+        {
+            events = mBuckets[bucket] = Arrays.copyOf(events, count * 2);
+        }
+        
+        int low = 0, high = count;
+        
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            
+            if(events[middle].compareTo(event) > 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        System.arraycopy(events, low, events, low + 1, count - low);
+        events[low] = event;
+        mCounts[bucket] = count + 1;
+        
+        // An event earlier than the current day moves the calendar back
+        if(event.eventTime < mBucketTop - mWidth)
+        {
+            mLastBucket = bucket;
+            mBucketTop = (event.eventTime / mWidth + 1) * mWidth;
+        }
+    }
+    
+    /**
+     * Finds the bucket holding the next event that has not been cancelled,
+     * discarding the cancelled events before it
+     * 
+     * @return Index of the bucket, or -1 if the queue is empty
+     */
+    private int findNext()
+    {
+        int bucket = this.findFirst();
+        
+        while(bucket >= 0 && mBuckets[bucket][mCounts[bucket] - 1].cancelled)
+        {
+            mBuckets[bucket][mCounts[bucket] - 1].release();
+            mBuckets[bucket][--mCounts[bucket]] = null;
+            mSize--;
+            bucket = this.findFirst();
+        }
+        return bucket;
+    }
+    
+    /**
+     * Finds the bucket holding the next event, cancelled or not
+     * 
+     * @return Index of the bucket, or -1 if the queue is empty
+     */
+    private int findFirst()
+    {
+        if(mSize == 0)
+        {
+            return -1;
+        }
+        
+        int bucket = mLastBucket;
+        long top = mBucketTop;
+        
+        for(int i = 0; i < mBuckets.length; i++)
+        {
+            int count = mCounts[bucket];
+            
+            if(count > 0 && mBuckets[bucket][count - 1].eventTime < top)
+            {
+                mLastBucket = bucket;
+                mBucketTop = top;
+                return bucket;
+            }
+            bucket = (bucket + 1) & (mBuckets.length - 1);
+            top += mWidth;
+        }
+        
+        // No event within a year, search all buckets directly
+        Event first = null;
+        
+        for(int i = 0; i < mBuckets.length; i++)
+        {
+            int count = mCounts[i];
+            
+            if(count > 0 && (first == null || mBuckets[i][count - 1].compareTo(first) < 0))
+            {
+                first = mBuckets[i][count - 1];
+                bucket = i;
+            }
+        }
+        mLastBucket = bucket;
+        mBucketTop = (first.eventTime / mWidth + 1) * mWidth;
+        return bucket;
+    }
+    
+    /**
+     * Rebuilds the calendar with a new number of buckets and a bucket width
+     * estimated from the separation of the next events
+     * 
+     * @param numberOfBuckets New number of buckets, a power of two
+     */
+    private void resize(int numberOfBuckets)
+    {
+        Event[] events = new Event[mSize];
+        int n = 0;
+        
+        for(int i = 0; i < mBuckets.length; i++)
+        {
+            System.arraycopy(mBuckets[i] == null ? events : mBuckets[i], 0, events, n, mCounts[i]);
+            n += mCounts[i];
+        }
+        Arrays.sort(events);
+        
+        long width = mWidth;
+        int samples = Math.min(events.length, SAMPLE_SIZE);
+        
+        if(samples > 1)
+        {
+            long separation = (events[samples - 1].eventTime - events[0].eventTime) / (samples - 1);
+            width = Math.max(1, 3 * separation);
+        }
+        this.initialize(numberOfBuckets, width, events.length > 0 ? events[0].eventTime : mBucketTop - mWidth);
+        
+        for(Event event : events)
+        {
+            this.insert(event);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package protocolsimulator;
+
+/**
+ * Congestion control of a sender with cumulative acknowledgements. The
+ * sender reports acknowledgements and timeouts, and may not have more
+ * segments unacknowledged than <code>getWindow()</code> (and the window
+ * of the receiver) allows.<br /><br />
+ *
+ * The congestion window is traced as TraceType.CongestionWindow every time
+ * it changes, so that it can be plotted over the simulated time.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface CongestionControl
+{
+    /**
+     * Available algorithms. None keeps the window of the sender fixed.
+     */
+    public enum Type {None, Reno, NewReno, Cubic};
+
+    /**
+     * Gets the number of segments that may be unacknowledged
+     *
+     * @return The congestion window rounded down, at least 1
+     */
+    public int getWindow();
+
+    /**
+     * Called when an acknowledgement for new data arrives
+     *
+     * @param ack Sequence number of the last acknowledged segment
+     * @param acked Number of segments that were acknowledged
+     * @return true if the segment after <code>ack</code> should be
+     *         retransmitted at once (a partial acknowledgement in fast recovery)
+     */
+    public boolean onAck(int ack, int acked);
+
+    /**
+     * Called when a duplicate acknowledgement arrives
+     *
+     * @param ack Sequence number of the duplicate acknowledgement
+     * @param inFlight Number of segments that are unacknowledged
+     * @param highestSent Sequence number of the highest segment sent
+     * @return true if the segment after <code>ack</code> should be
+     *         retransmitted at once (a fast retransmit)
+     */
+    public boolean onDuplicateAck(int ack, int inFlight, int highestSent);
+
+    /**
+     * Called when the retransmission timer expires
+     *
+     * @param inFlight Number of segments that are unacknowledged
+     * @param highestSent Sequence number of the highest segment sent
+     */
+    public void onTimeout(int inFlight, int highestSent);
+}
@@ -22,9 +22,14 @@ import javax.swing.border.TitledBorder;
 public class ControlPanel extends JPanel
 {
     private static final long serialVersionUID = 8851125516496197874L;
+    private static final int MAX_LOGG_LIMIT = 100000;
     private Font font = new Font("Arial", Font.PLAIN, 12);
     private JButton start;
-    private JTextField numberOfMessagesField, timerField, windowSizeField, corruptionField, lossField;
+    private JTextField numberOfMessagesField, timerField, windowSizeField, corruptionField, lossField, seedField;
+    private JTextField linkABField, linkBAField, trafficField, loggLimitField;
+    private JCheckBox loggBox, adaptiveTimerBox;
+    private JComboBox<String> protocolABox, protocolBBox;
+    private JComboBox<CongestionControl.Type> congestionBox;
     private List<JComponent> disableableComponets = new ArrayList<JComponent>(); 
     private Simulator mSimulator = null;
     
@@ -64,9 +69,55 @@ public class ControlPanel extends JPanel
         optionsPanel.add(new JLabel("Timer (ms) "));
         optionsPanel.add(timerField);
         
+        adaptiveTimerBox = new JCheckBox("", false);
+        adaptiveTimerBox.setBackground(Color.WHITE);
+        optionsPanel.add(new JLabel("Adaptiv timer "));
+        optionsPanel.add(adaptiveTimerBox);
+        
         windowSizeField = new JTextField("2");
         optionsPanel.add(new JLabel("F�nsterstorlek "));
         optionsPanel.add(windowSizeField);        
+        
+        seedField = new JTextField("");
+        optionsPanel.add(new JLabel("Slumpfrö "));
+        optionsPanel.add(seedField);
+        
+        protocolABox = new JComboBox<String>(TransportProtocols.getNames().toArray(new String[0]));
+        protocolABox.setSelectedItem(TransportProtocols.GO_BACK_N);
+        optionsPanel.add(new JLabel("Protokoll A "));
+        optionsPanel.add(protocolABox);
+        
+        protocolBBox = new JComboBox<String>(TransportProtocols.getNames().toArray(new String[0]));
+        protocolBBox.setSelectedItem(TransportProtocols.GO_BACK_N);
+        optionsPanel.add(new JLabel("Protokoll B "));
+        optionsPanel.add(protocolBBox);
+        
+        congestionBox = new JComboBox<CongestionControl.Type>(CongestionControl.Type.values());
+        optionsPanel.add(new JLabel("Trängselkontroll "));
+        optionsPanel.add(congestionBox);
+        
+        // Empty fields give the default link, e.g. bandwidth=64k,delay=200,queue=20,red
+        linkABField = new JTextField("");
+        optionsPanel.add(new JLabel("Länk A-B "));
+        optionsPanel.add(linkABField);
+        
+        linkBAField = new JTextField("");
+        optionsPanel.add(new JLabel("Länk B-A "));
+        optionsPanel.add(linkBAField);
+        
+        // Empty field gives a message every 700 ms, e.g. poisson:700 or onoff:100:2000:5000
+        trafficField = new JTextField("");
+        optionsPanel.add(new JLabel("Trafik "));
+        optionsPanel.add(trafficField);
+        
+        loggBox = new JCheckBox("", true);
+        loggBox.setBackground(Color.WHITE);
+        optionsPanel.add(new JLabel("Logg "));
+        optionsPanel.add(loggBox);
+        
+        loggLimitField = new JTextField("1000");
+        optionsPanel.add(new JLabel("Loggrader "));
+        optionsPanel.add(loggLimitField);
                 
         JLabel probability = new JLabel("Sannolikhet f�r...");
         
@@ -86,7 +137,17 @@ public class ControlPanel extends JPanel
         disableableComponets.add(corruptionField);
         disableableComponets.add(lossField);
         disableableComponets.add(timerField);
+        disableableComponets.add(adaptiveTimerBox);
         disableableComponets.add(windowSizeField);
+        disableableComponets.add(seedField);
+        disableableComponets.add(protocolABox);
+        disableableComponets.add(protocolBBox);
+        disableableComponets.add(congestionBox);
+        disableableComponets.add(linkABField);
+        disableableComponets.add(linkBAField);
+        disableableComponets.add(trafficField);
+        disableableComponets.add(loggBox);
+        disableableComponets.add(loggLimitField);
         
         settingsPanel.add(optionsPanel, BorderLayout.PAGE_START);
         settingsPanel.add(probability, BorderLayout.LINE_START);
@@ -134,10 +195,14 @@ public class ControlPanel extends JPanel
         try
         {
             input = this.validateInput();
+            // The log keeps its lines in an array of this size
+            int loggLimit = this.convertToInt(loggLimitField.getText(), 1, MAX_LOGG_LIMIT);
             
             this.setEnabledComponents(false);
             
-            mSimulator = new Simulator(input);                    
+            GUI.getInstance().setLoggEnabled(loggBox.isSelected());
+            GUI.getInstance().setLoggLimit(loggLimit);
+            mSimulator = new Simulator(input, GUI.getInstance());                    
             mSimulator.startSimulation();
         }
         catch(Exception e)
@@ -169,8 +234,28 @@ public class ControlPanel extends JPanel
         int numberOfMessages = this.convertToInt(numberOfMessagesField.getText(), 1, Integer.MAX_VALUE);
         int timerValue = this.convertToInt(timerField.getText(), 0, Integer.MAX_VALUE);
         int windowSize = this.convertToInt(windowSizeField.getText(), 1, Integer.MAX_VALUE);
-                                
-        return new Input(timerValue, lossProbability, corruptionProbability, numberOfMessages, windowSize);
+        Input input = new Input(timerValue, lossProbability, corruptionProbability, numberOfMessages, windowSize);
+        input.protocolA = (String)protocolABox.getSelectedItem();
+        input.protocolB = (String)protocolBBox.getSelectedItem();
+        input.adaptiveTimer = adaptiveTimerBox.isSelected();
+        input.congestionControl = (CongestionControl.Type)congestionBox.getSelectedItem();
+        input.linkAB = LinkSettings.parse(linkABField.getText());
+        input.linkBA = LinkSettings.parse(linkBAField.getText());
+        input.traffic = TrafficSettings.parse(trafficField.getText());
+        
+        // An empty seed keeps the random seed chosen by Input
+        if(seedField.getText().trim().length() > 0)
+        {
+            try
+            {
+                input.seed = Long.parseLong(seedField.getText().trim());
+            }
+            catch(NumberFormatException e)
+            {
+                throw new Exception("ogiltigt slumpfrö, endast siffror kan användas");
+            }
+        }
+        return input;
     }
     private int convertToInt(String text, int min, int max) throws Exception
     {
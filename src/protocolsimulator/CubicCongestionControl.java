@@ -0,0 +1,66 @@
+package protocolsimulator;
+
+/**
+ * Congestion control in the style of CUBIC (RFC 8312). After a loss the
+ * window is reduced to 70 % and then grows as a cubic function of the
+ * simulated time since the loss: quickly back towards the window where the
+ * loss happened, slowly around it and quickly again beyond it. The window
+ * never grows slower than a Reno window with the same reduction would.
+ * Slow start, fast retransmit and fast recovery are the same as in Reno.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class CubicCongestionControl extends RenoCongestionControl
+{
+    private static final double C = 0.4, BETA = 0.7;
+    private double mMaxWindow = 0, mRenoWindow = 0, mOrigin = 0, mK = 0;
+    private long mEpochStart = -1;
+
+    /**
+     * Constructs a CubicCongestionControl
+     *
+     * @param layers Gives the simulated time and receives the trace
+     * @param receiverWindow Window of the receiver in segments, also the initial slow start threshold
+     */
+    public CubicCongestionControl(LayerSimulator layers, int receiverWindow)
+    {
+        super(layers, receiverWindow);
+    }
+
+    @Override
+    protected void increase(int acked)
+    {
+        long now = mLayerSimulator.getCurrentTime();
+
+        if(mEpochStart < 0)
+        {
+            mEpochStart = now;
+            mRenoWindow = mCongestionWindow;
+            mOrigin = Math.max(mMaxWindow, mCongestionWindow);
+            mK = Math.cbrt((mOrigin - mCongestionWindow) / C);
+        }
+        double t = (now - mEpochStart) / 1000.0 - mK;
+        double target = mOrigin + C * t * t * t;
+
+        if(target > mCongestionWindow)
+        {
+            mCongestionWindow += (target - mCongestionWindow) / mCongestionWindow * acked;
+        }
+        else
+        {
+            mCongestionWindow += 0.01 * acked / mCongestionWindow;
+        }
+        // The window a Reno sender with the same reduction would have
+        mRenoWindow += 3 * (1 - BETA) / (1 + BETA) * acked / mRenoWindow;
+        mCongestionWindow = Math.max(mCongestionWindow, mRenoWindow);
+    }
+
+    @Override
+    protected int decrease(int inFlight)
+    {
+        mMaxWindow = mCongestionWindow;
+        mEpochStart = -1;
+        return Math.max((int)(mCongestionWindow * BETA), 2);
+    }
+}
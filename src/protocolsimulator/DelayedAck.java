@@ -0,0 +1,171 @@
+package protocolsimulator;
+
+/**
+ * The acknowledgements of a receiver, held back for a while so that they
+ * can be piggybacked on data segments going the other way, as with delayed
+ * ACKs in TCP (RFC 1122).<br /><br />
+ *
+ * The transport layer registers the ACK of every correct data segment with
+ * <code>acknowledge</code>, passes every data segment it sends through
+ * <code>piggyback</code>, and calls <code>flush</code> when it has handled
+ * an arriving segment. <code>flush</code> sends the pending ACK in a
+ * segment of its own when the delay is 0, when a second data segment is
+ * unacknowledged or when a segment arrived out of order, since the sender
+ * needs the duplicate ACKs soon. Otherwise the ACK waits for a data segment
+ * until the delay has passed, and is sent when the timer
+ * <code>TIMER_ID</code> expires.<br /><br />
+ *
+ * With cumulative ACKs a newer ACK replaces the pending one. Otherwise
+ * every data segment needs its own ACK, and the pending ACK is sent before
+ * an ACK for another segment is registered.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class DelayedAck
+{
+    /** Acknowledge number of a data segment that carries no ACK */
+    public static final int NO_ACK = -1;
+    /** Id of the timer of the pending ACK, other than the ids of the segment timers */
+    public static final int TIMER_ID = -2;
+    // RFC 1122: an ACK should be sent for at least every second full segment
+    private static final int MAX_UNACKNOWLEDGED = 2;
+    // The payloads of the standalone ACKs, by the first letter of the
+    // acknowledged payload, so that sending an ACK does not build a string
+    private static final String[] ACK_PAYLOADS = new String[256];
+    private final LayerSimulator mLayerSimulator;
+    private final String mId;
+    private final int mDelay;
+    private final boolean mCumulative;
+    private int mAckNumber = NO_ACK, mUnacknowledged = 0;
+    private boolean mImmediately = false;
+    // Payload of the acknowledged segment, the standalone ACK names its first letter
+    private String mPayload = null;
+    private Timer mTimer = null;
+
+    static
+    {
+        for(int letter = 0; letter < ACK_PAYLOADS.length; letter++)
+        {
+            ACK_PAYLOADS[letter] = "ACK " + (char)letter;
+        }
+    }
+
+    /**
+     * Constructs a DelayedAck
+     *
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layers above and below the Transport Layer
+     * @param delay Longest time in ms that an ACK waits for a data segment, 0 to send every ACK at once
+     * @param cumulative true if an ACK acknowledges every segment up to its number
+     */
+    public DelayedAck(String id, LayerSimulator layers, int delay, boolean cumulative)
+    {
+        mId = id;
+        mLayerSimulator = layers;
+        mDelay = delay;
+        mCumulative = cumulative;
+    }
+
+    /**
+     * Registers the ACK of a correct data segment
+     *
+     * @param ackNumber The acknowledge number
+     * @param payload Payload of the data segment
+     * @param immediately true if the segment arrived out of order or was a duplicate
+     */
+    public void acknowledge(int ackNumber, String payload, boolean immediately)
+    {
+        if(mUnacknowledged > 0 && !mCumulative && ackNumber != mAckNumber)
+        {
+            this.send();
+        }
+        mAckNumber = ackNumber;
+        mPayload = payload;
+        mUnacknowledged++;
+        mImmediately |= immediately;
+    }
+
+    /**
+     * Puts the pending ACK, if there is one, in a data segment that is about
+     * to be sent. The segments in a window are never changed, so the ACK is
+     * put in a copy.
+     *
+     * @param segment The data segment
+     * @return The segment to send, a copy with the ACK if one was pending
+     */
+    public Segment piggyback(Segment segment)
+    {
+        if(mUnacknowledged == 0)
+        {
+            return segment;
+        }
+        mLayerSimulator.trace(TraceType.AckPiggybacked, mAckNumber, segment.seqNumber, 0);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " piggybacks ACK " + mAckNumber + " on " + segment.payload);
+        }
+        Segment piggybacked = new Segment(segment.from, segment.seqNumber, mAckNumber, segment.payload);
+
+        this.clear();
+        return piggybacked;
+    }
+
+    /**
+     * Sends the pending ACK if it may not wait, and otherwise starts its
+     * timer if it is not running
+     */
+    public void flush()
+    {
+        if(mUnacknowledged == 0)
+        {
+            return;
+        }
+        if(mDelay == 0 || mImmediately || mUnacknowledged >= MAX_UNACKNOWLEDGED)
+        {
+            this.send();
+        }
+        else if(mTimer == null || !mTimer.isActive())
+        {
+            mTimer = mLayerSimulator.startTimer(TIMER_ID, mDelay);
+        }
+    }
+
+    /**
+     * Sends the pending ACK when no data segment came to carry it in time
+     */
+    public void timerInterrupt()
+    {
+        if(mUnacknowledged > 0)
+        {
+            this.send();
+        }
+    }
+
+    private void send()
+    {
+        mLayerSimulator.trace(TraceType.AckSent, mAckNumber, 0, 0);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " sends ACK " + mAckNumber);
+        }
+        char letter = mPayload.charAt(0);
+        String payload = letter < ACK_PAYLOADS.length ? ACK_PAYLOADS[letter] : "ACK " + letter;
+
+        mLayerSimulator.toNetworkLayer(new Segment(mId, NO_ACK, mAckNumber, payload));
+        this.clear();
+    }
+
+    private void clear()
+    {
+        mUnacknowledged = 0;
+        mImmediately = false;
+        mPayload = null;
+
+        if(mTimer != null)
+        {
+            mTimer.cancel();
+            mTimer = null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package protocolsimulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The receiving application layer. Checks as the messages arrive that they
+ * are delivered in order and exactly once, compared to the messages the
+ * sending application layer gave to its transport layer. Only the messages
+ * that have been sent but not yet delivered are kept, which the sending
+ * transport layer holds anyway, and the last few delivered messages for
+ * the animation, so the memory does not grow with the length of the
+ * run.<br /><br />
+ *
+ * The first divergence is kept as a description. After it, every
+ * delivered message is still compared to the next expected message, so
+ * the error count tells how far the delivery is off.<br /><br />
+ *
+ * The time each pending message was sent is kept with it, and the delay
+ * until it is delivered is recorded in a histogram.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class DeliveryVerifier
+{
+    /** Number of delivered messages kept for the animation */
+    public static final int TAIL_SIZE = 8;
+    private String[] mPending = new String[16];
+    private long[] mPendingTimes = new long[16];
+    private int mPendingHead = 0, mPendingCount = 0;
+    private final String[] mTail = new String[TAIL_SIZE];
+    private int mTailHead = 0, mTailCount = 0;
+    private long mSent = 0, mDelivered = 0, mDeliveredBytes = 0, mErrors = 0;
+    private String mDivergence = null;
+    private final Histogram mDelay;
+
+    /**
+     * Constructs a DeliveryVerifier
+     *
+     * @param delay Receives the delay in ms of every delivered message that
+     *        was the next expected message
+     */
+    public DeliveryVerifier(Histogram delay)
+    {
+        mDelay = delay;
+    }
+
+    /**
+     * Called when the sending application layer gives a message to its
+     * transport layer
+     *
+     * @param message The message
+     * @param time Simulated time when the message was sent
+     */
+    public void sent(String message, long time)
+    {
+        if(mPendingCount == mPending.length)
+        {
+            String[] grown = new String[mPending.length * 2];
+            long[] grownTimes = new long[grown.length];
+
+            for(int i = 0; i < mPendingCount; i++)
+            {
+                grown[i] = mPending[(mPendingHead + i) & (mPending.length - 1)];
+                grownTimes[i] = mPendingTimes[(mPendingHead + i) & (mPending.length - 1)];
+            }
+            mPending = grown;
+            mPendingTimes = grownTimes;
+            mPendingHead = 0;
+        }
+        int index = (mPendingHead + mPendingCount) & (mPending.length - 1);
+
+        mPending[index] = message;
+        mPendingTimes[index] = time;
+        mPendingCount++;
+        mSent++;
+    }
+
+    /**
+     * Called when the receiving transport layer delivers a message
+     *
+     * @param message The message
+     * @param time Simulated time of the delivery
+     * @return A description of the error, or null if the message was the
+     *         next expected message
+     */
+    public String delivered(String message, long time)
+    {
+        String error = null;
+
+        if(mPendingCount == 0)
+        {
+            error = "message " + (mDelivered + 1) + " (" + message + ") was never sent";
+        }
+        else
+        {
+            String expected = mPending[mPendingHead];
+            long sentTime = mPendingTimes[mPendingHead];
+
+            mPending[mPendingHead] = null;
+            mPendingHead = (mPendingHead + 1) & (mPending.length - 1);
+            mPendingCount--;
+
+            if(!expected.equals(message))
+            {
+                error = "message " + (mDelivered + 1) + " was " + message + ", expected " + expected;
+            }
+            else
+            {
+                mDelay.record(time - sentTime);
+            }
+        }
+        mDelivered++;
+        mDeliveredBytes += message.length();
+        mTail[(mTailHead + mTailCount) % TAIL_SIZE] = message;
+
+        if(mTailCount < TAIL_SIZE)
+        {
+            mTailCount++;
+        }
+        else
+        {
+            mTailHead = (mTailHead + 1) % TAIL_SIZE;
+        }
+
+        if(error != null)
+        {
+            mErrors++;
+
+            if(mDivergence == null)
+            {
+                mDivergence = error + " at " + time + " ms";
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Gets the number of messages sent
+     *
+     * @return Number of messages given to the sending transport layer
+     */
+    public long getSent()
+    {
+        return mSent;
+    }
+
+    /**
+     * Gets the number of messages delivered
+     *
+     * @return Number of delivered messages, correct or not
+     */
+    public long getDelivered()
+    {
+        return mDelivered;
+    }
+
+    /**
+     * Gets the number of payload bytes delivered
+     *
+     * @return Number of delivered bytes
+     */
+    public long getDeliveredBytes()
+    {
+        return mDeliveredBytes;
+    }
+
+    /**
+     * Gets the number of messages sent but not yet delivered
+     *
+     * @return Number of pending messages
+     */
+    public int getPending()
+    {
+        return mPendingCount;
+    }
+
+    /**
+     * Gets the number of delivered messages that were not the next expected
+     * message
+     *
+     * @return Number of errors
+     */
+    public long getErrors()
+    {
+        return mErrors;
+    }
+
+    /**
+     * Checks if every delivered message so far was the next expected message
+     *
+     * @return true if there has been no error
+     */
+    public boolean isCorrect()
+    {
+        return mErrors == 0;
+    }
+
+    /**
+     * Gets the first divergence from the sent messages
+     *
+     * @return A description of the first error, or null if there is none
+     */
+    public String getDivergence()
+    {
+        return mDivergence;
+    }
+
+    /**
+     * Gets the last delivered messages
+     *
+     * @return At most <code>TAIL_SIZE</code> messages, the oldest first
+     */
+    public List<String> getTail()
+    {
+        List<String> tail = new ArrayList<String>(mTailCount);
+
+        for(int i = 0; i < mTailCount; i++)
+        {
+            tail.add(mTail[(mTailHead + i) % TAIL_SIZE]);
+        }
+        return tail;
+    }
+}
@@ -6,12 +6,21 @@ package protocolsimulator;
  * @author Thomas Ejnefjäll
  * @version 2007-11-20
  */
-public class Event
+public class Event implements Comparable<Event>
 {
     public enum EventType {ApplicationLayer, NetworkLayer, TimerInterrupt};
     public EventType eventType;
     public long eventTime;
     public ExtendedSegment extendedSegment;
+    public long sequence;
+    // Orders events with the same time, see compareTo
+    public long key;
+    public Timer timer;
+    // Number of the flow of an application layer event
+    public int flow;
+    public boolean cancelled;
+    // The pool that the event is released to, null if it is not pooled
+    EventPool pool;
     
     /**
      * Constructs an event 
@@ -26,6 +35,37 @@ public class Event
         this.eventTime = eventTime;
         this.extendedSegment = extendedSegment;
     }
+    /**
+     * Releases the event to its pool, if it has one
+     */
+    void release()
+    {
+        if(pool != null)
+        {
+            pool.release(this);
+        }
+    }
+    /**
+     * Orders events by event time, events with the same event time by key
+     * and events with the same key by the sequence number they were given
+     * when added to the event queue. The simulator gives every event a key
+     * from the host it is handled by, so that the order does not depend on
+     * when the events were added, which a parallel simulation can not
+     * repeat.
+     */
+    @Override
+    public int compareTo(Event other)
+    {
+        if(eventTime != other.eventTime)
+        {
+            return eventTime < other.eventTime ? -1 : 1;
+        }
+        if(key != other.key)
+        {
+            return key < other.key ? -1 : 1;
+        }
+        return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
     @Override
     public String toString()
     {
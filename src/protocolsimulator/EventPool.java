@@ -0,0 +1,111 @@
+package protocolsimulator;
+
+import java.util.Arrays;
+
+/**
+ * Reuses the events and extended segments of a simulation, so that a
+ * headless run does not allocate new objects for every segment and timer.
+ * An event is released when it has been handled or, if it was cancelled,
+ * when the event queue discards it. Releasing an event also releases its
+ * extended segment. Nothing may keep a reference to an event after it has
+ * been released, which is why the paced view, whose animation reads the
+ * events in the queue from another thread, does not use a pool.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class EventPool
+{
+    private Event[] mEvents = new Event[64];
+    private ExtendedSegment[] mSegments = new ExtendedSegment[64];
+    private int mEventCount = 0, mSegmentCount = 0;
+
+    /**
+     * Gets an event from the pool, or a new event if the pool is empty
+     *
+     * @param eventType Type of event
+     * @param eventTime Time for the event
+     * @param extendedSegment Information about segment
+     * @return The event
+     */
+    public Event obtain(Event.EventType eventType, long eventTime, ExtendedSegment extendedSegment)
+    {
+        Event event;
+
+        if(mEventCount == 0)
+        {
+            event = new Event(eventType, eventTime, extendedSegment);
+        }
+        else
+        {
+            event = mEvents[--mEventCount];
+            mEvents[mEventCount] = null;
+            event.eventType = eventType;
+            event.eventTime = eventTime;
+            event.extendedSegment = extendedSegment;
+        }
+        event.pool = this;
+        return event;
+    }
+
+    /**
+     * Gets an extended segment from the pool, or a new one if the pool is
+     * empty
+     *
+     * @param segment The segment
+     * @param isCorrupted Whether the segment will be corrupted
+     * @param isLost Whether the segment will be lost
+     * @return The extended segment
+     */
+    public ExtendedSegment obtain(Segment segment, boolean isCorrupted, boolean isLost)
+    {
+        if(mSegmentCount == 0)
+        {
+            return new ExtendedSegment(segment, isCorrupted, isLost);
+        }
+        ExtendedSegment extendedSegment = mSegments[--mSegmentCount];
+
+        mSegments[mSegmentCount] = null;
+        extendedSegment.segment = segment;
+        extendedSegment.isCorrupted = isCorrupted;
+        extendedSegment.isLost = isLost;
+        extendedSegment.departureTime = 0;
+        extendedSegment.destination = 0;
+        return extendedSegment;
+    }
+
+    /**
+     * Returns an event and its extended segment to the pool. An event that
+     * is not from the pool, or has already been released, is ignored.
+     *
+     * @param event The event
+     */
+    public void release(Event event)
+    {
+        if(event.pool != this)
+        {
+            return;
+        }
+        if(event.extendedSegment != null)
+        {
+            if(mSegmentCount == mSegments.length)
+            {
+                mSegments = Arrays.copyOf(mSegments, mSegmentCount * 2);
+            }
+            // The segment itself belongs to the transport layers
+            event.extendedSegment.segment = null;
+            mSegments[mSegmentCount++] = event.extendedSegment;
+        }
+        if(mEventCount == mEvents.length)
+        {
+            mEvents = Arrays.copyOf(mEvents, mEventCount * 2);
+        }
+        event.pool = null;
+        event.extendedSegment = null;
+        event.timer = null;
+        event.flow = 0;
+        event.key = 0;
+        event.cancelled = false;
+        mEvents[mEventCount++] = event;
+    }
+}
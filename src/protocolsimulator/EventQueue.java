@@ -0,0 +1,70 @@
+package protocolsimulator;
+
+/**
+ * Priority queue of the events in the simulation. Events are returned in
+ * the order of <code>Event.compareTo</code>: by event time, events with the
+ * same event time by their key, see <code>Host.nextKey</code>, and events
+ * with the same key by the sequence number the queue gives them when they
+ * are added. The key does not depend on when an event was added, so a
+ * simulation of the hosts in parallel partitions handles the events in the
+ * same order as a sequential one.<br /><br />
+ * 
+ * Cancelled events are deleted lazily. They stay in the queue until they
+ * reach its head, where <code>poll()</code>, <code>peek()</code> and
+ * <code>isEmpty()</code> discard them, so <code>size()</code> may count
+ * cancelled events. A discarded event is released to its EventPool.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface EventQueue extends Iterable<Event>
+{
+    /**
+     * Available implementations of the queue
+     */
+    public enum Type {BinaryHeap, Calendar};
+    
+    /**
+     * Adds an event to the queue
+     * 
+     * @param event The event to add
+     */
+    public void add(Event event);
+    
+    /**
+     * Removes the next event that has not been cancelled from the queue
+     * 
+     * @return The next event, or null if the queue is empty
+     */
+    public Event poll();
+    
+    /**
+     * Gets the next event that has not been cancelled without removing it
+     * from the queue
+     * 
+     * @return The next event, or null if the queue is empty
+     */
+    public Event peek();
+    
+    /**
+     * Removes an event from the queue
+     * 
+     * @param event The event to remove
+     * @return true if the event was in the queue
+     */
+    public boolean remove(Event event);
+    
+    /**
+     * Gets the number of events in the queue
+     * 
+     * @return Number of events
+     */
+    public int size();
+    
+    /**
+     * Checks if the queue is empty
+     * 
+     * @return true if there are no events that have not been cancelled
+     */
+    public boolean isEmpty();
+}
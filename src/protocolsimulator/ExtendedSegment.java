@@ -10,6 +10,9 @@ public class ExtendedSegment
 {    
     public boolean isCorrupted, isLost;
     public Segment segment; 
+    public long departureTime;
+    // Number of the host the segment is sent to
+    public int destination;
     
     /**
      * COnstructs a ExtendedSegment
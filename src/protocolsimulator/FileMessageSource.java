@@ -0,0 +1,138 @@
+package protocolsimulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Replays messages from a file, reading one line at a time. Each line is
+ * the time in ms and the message separated by white space, and empty lines
+ * are skipped. A time before the time of the previous line is replaced by
+ * the previous time.<br /><br />
+ *
+ * The protocols recognise an ACK by its payload, so a message may not
+ * start with "ACK", and the length field of a segment limits a message to
+ * <code>Segment.MAX_PAYLOAD_SIZE</code> characters.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class FileMessageSource implements MessageSource
+{
+    private final String mFileName;
+    private final int mNumberOfMessages;
+    private BufferedReader mReader;
+    private int mCount = 0, mLine = 0;
+    private long mTime = 0;
+    private String mMessage = null;
+
+    /**
+     * Constructs a FileMessageSource
+     *
+     * @param fileName Name of the file
+     * @param numberOfMessages Largest number of messages to replay
+     * @throws IOException If the file could not be opened
+     */
+    public FileMessageSource(String fileName, int numberOfMessages) throws IOException
+    {
+        mFileName = fileName;
+        mNumberOfMessages = numberOfMessages;
+        mReader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Moves to the next message
+     *
+     * @throws IllegalArgumentException If a line is not a time and a valid
+     *         message
+     * @throws UncheckedIOException If the file could not be read
+     */
+    @Override
+    public boolean next()
+    {
+        if(mReader == null)
+        {
+            return false;
+        }
+        String line;
+
+        try
+        {
+            do
+            {
+                line = mCount < mNumberOfMessages ? mReader.readLine() : null;
+                mLine++;
+            }
+            while(line != null && line.trim().isEmpty());
+        }
+        catch(IOException e)
+        {
+            this.close();
+            throw new UncheckedIOException("could not read " + mFileName + ": " + e.getMessage(), e);
+        }
+        if(line == null)
+        {
+            this.close();
+            return false;
+        }
+        String[] parts = line.trim().split("\\s+", 2);
+
+        if(parts.length != 2)
+        {
+            throw this.invalidLine("a line must be a time and a message");
+        }
+        if(parts[1].startsWith("ACK"))
+        {
+            throw this.invalidLine("a message may not start with ACK");
+        }
+        if(parts[1].length() > Segment.MAX_PAYLOAD_SIZE)
+        {
+            throw this.invalidLine("a message may be at most " + Segment.MAX_PAYLOAD_SIZE + " characters");
+        }
+        try
+        {
+            mTime = Math.max(mTime, Long.parseLong(parts[0]));
+        }
+        catch(NumberFormatException e)
+        {
+            throw this.invalidLine("invalid time " + parts[0]);
+        }
+        mMessage = parts[1];
+        mCount++;
+        return true;
+    }
+
+    @Override
+    public long getTime()
+    {
+        return mTime;
+    }
+
+    @Override
+    public String getMessage()
+    {
+        return mMessage;
+    }
+
+    private IllegalArgumentException invalidLine(String reason)
+    {
+        this.close();
+        return new IllegalArgumentException(mFileName + ":" + mLine + ": " + reason);
+    }
+
+    private void close()
+    {
+        try
+        {
+            mReader.close();
+        }
+        catch(IOException ignore)
+        {
+            // Nothing more is read
+        }
+        mReader = null;
+    }
+}
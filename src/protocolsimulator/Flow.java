@@ -0,0 +1,152 @@
+package protocolsimulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transfer from the application layer of a sending host to the
+ * application layer of a receiving host. Reads a few messages ahead from
+ * its source, so that the upcoming messages can be animated, and verifies
+ * the delivered messages.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+class Flow
+{
+    // Number of upcoming messages that are read ahead for the animation
+    private static final int UPCOMING_MESSAGES = 8;
+    private final int mNumber;
+    private final Host mSender, mReceiver;
+    private final MessageSource mSource;
+    private final DeliveryVerifier mVerifier;
+    private boolean mSourceEmpty = false;
+    private final String[] mUpcoming = new String[UPCOMING_MESSAGES];
+    private final long[] mUpcomingTimes = new long[UPCOMING_MESSAGES];
+    private int mUpcomingHead = 0, mUpcomingCount = 0;
+
+    /**
+     * Constructs a Flow
+     *
+     * @param number Number of the flow
+     * @param sender The sending host
+     * @param receiver The receiving host
+     * @param source The messages of the sending application layer
+     * @param verifier Verifies the delivered messages
+     */
+    Flow(int number, Host sender, Host receiver, MessageSource source, DeliveryVerifier verifier)
+    {
+        mNumber = number;
+        mSender = sender;
+        mReceiver = receiver;
+        mSource = source;
+        mVerifier = verifier;
+        this.readMessages();
+    }
+
+    int getNumber()
+    {
+        return mNumber;
+    }
+
+    Host getSender()
+    {
+        return mSender;
+    }
+
+    Host getReceiver()
+    {
+        return mReceiver;
+    }
+
+    DeliveryVerifier getVerifier()
+    {
+        return mVerifier;
+    }
+
+    /**
+     * Checks if the source has another message
+     *
+     * @return true if there is an upcoming message
+     */
+    boolean hasNextMessage()
+    {
+        return mUpcomingCount > 0;
+    }
+
+    /**
+     * Gets the time of the next message
+     *
+     * @return Simulated time when the next message is sent
+     */
+    long getNextTime()
+    {
+        return mUpcomingTimes[mUpcomingHead];
+    }
+
+    /**
+     * Takes the next message to give it to the sending transport layer
+     *
+     * @param time Simulated time when the message is sent
+     * @return The message
+     */
+    String nextMessage(long time)
+    {
+        String message = mUpcoming[mUpcomingHead];
+
+        mUpcoming[mUpcomingHead] = null;
+        mUpcomingHead = (mUpcomingHead + 1) % UPCOMING_MESSAGES;
+        mUpcomingCount--;
+        mVerifier.sent(message, time);
+        this.readMessages();
+        return message;
+    }
+
+    /**
+     * Gets the messages that have been read ahead
+     *
+     * @return The upcoming messages, the next first
+     */
+    List<String> getUpcomingMessages()
+    {
+        List<String> messages = new ArrayList<String>(mUpcomingCount);
+
+        for(int i = 0; i < mUpcomingCount; i++)
+        {
+            messages.add(mUpcoming[(mUpcomingHead + i) % UPCOMING_MESSAGES]);
+        }
+        return messages;
+    }
+
+    /**
+     * Checks if the source has no more messages and every message has been
+     * delivered
+     *
+     * @return true if the transfer is complete
+     */
+    boolean isCompleted()
+    {
+        return mSourceEmpty && mUpcomingCount == 0 && mVerifier.getPending() == 0;
+    }
+
+    /**
+     * Reads messages from the source until the upcoming messages are full
+     */
+    private void readMessages()
+    {
+        while(mUpcomingCount < UPCOMING_MESSAGES && !mSourceEmpty)
+        {
+            if(mSource.next())
+            {
+                int index = (mUpcomingHead + mUpcomingCount++) % UPCOMING_MESSAGES;
+
+                mUpcoming[index] = mSource.getMessage();
+                mUpcomingTimes[index] = mSource.getTime();
+            }
+            else
+            {
+                mSourceEmpty = true;
+            }
+        }
+    }
+}
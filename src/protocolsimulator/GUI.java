@@ -2,6 +2,8 @@ package protocolsimulator;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.List;
 
 import javax.swing.JFrame;
@@ -14,12 +16,16 @@ import javax.swing.JTextArea;
  * @author Thomas Ejnefjäll
  * @version 2007-11-23
  */
-public class GUI extends JFrame
+public class GUI extends JFrame implements SimulationListener
 {
     private static final long serialVersionUID = -8194582744105531571L;
     private Screen mScreen;
     private JTextArea mLogg;
     private ControlPanel mSettings;
+    private LogBuffer mLoggBuffer = new LogBuffer(LOGG_LIMIT);
+    private long mShownLoggVersion = 0;
+    private volatile boolean mLoggEnabled = true;
+    private static final int LOGG_LIMIT = 1000, LOGG_REFRESH_INTERVAL = 40;
     private static GUI mInstance = new GUI();
     
     /**
@@ -32,6 +38,7 @@ public class GUI extends JFrame
         this.pack();
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         this.setResizable(false);   
+        this.startLoggRefresh();
     }
     /**
      * Gets the unique instance of the GUI
@@ -43,20 +50,53 @@ public class GUI extends JFrame
         return mInstance;        
     }
     /**
-     * Adds text to the log
+     * Adds text to the log. The text is shown the next time the log is
+     * refreshed on the event dispatch thread, and only the latest lines up
+     * to the log limit are kept.
      * 
      * @param text The text to be added to the log
      */
+    @Override
     public void addToLogg(String text)
     {
-        mLogg.setText(text + "\n" + mLogg.getText());               
+        mLoggBuffer.add(text);
     }
     /**
      * Clears the log
      */
+    @Override
     public void clearLogg()
     {
-        mLogg.setText("");        
+        mLoggBuffer.clear();        
+    }
+    /**
+     * Checks if the log is enabled
+     * 
+     * @return true if text added to the log is shown
+     */
+    @Override
+    public boolean isLoggEnabled()
+    {
+        return mLoggEnabled;
+    }
+    /**
+     * Enables or disables the log. A disabled log lets the simulation skip
+     * building the log text altogether.
+     * 
+     * @param enabled Whether the log is enabled
+     */
+    public void setLoggEnabled(boolean enabled)
+    {
+        mLoggEnabled = enabled;
+    }
+    /**
+     * Sets the maximum number of lines kept in the log
+     * 
+     * @param limit Maximum number of lines
+     */
+    public void setLoggLimit(int limit)
+    {
+        mLoggBuffer.setLimit(limit);
     }
     /**
      * Animates messages and packets 
@@ -66,10 +106,32 @@ public class GUI extends JFrame
      * @param events Packets in transit to be animated
      * @param currentTime Time for animation
      */
+    @Override
     public void animate(List<String> messagesToSend, List<String> receivedMessages, List<Event> events, long currentTime)
     {
         mScreen.animate(messagesToSend, receivedMessages, events, currentTime);        
     }
+    /**
+     * Copies the log buffer to the text area at a fixed rate on the event
+     * dispatch thread, so that lines are shown in batches instead of one
+     * text area update per line
+     */
+    private void startLoggRefresh()
+    {
+        javax.swing.Timer refresh = new javax.swing.Timer(LOGG_REFRESH_INTERVAL, new ActionListener(){
+            public void actionPerformed(ActionEvent e){
+                long version = mLoggBuffer.getVersion();
+                
+                if(version != mShownLoggVersion)
+                {
+                    mShownLoggVersion = version;
+                    mLogg.setText(mLoggBuffer.getText());
+                    mLogg.setCaretPosition(0);
+                }
+            }
+        });
+        refresh.start();
+    }
     private void initializeGUI()
     {        
         mScreen = new Screen();
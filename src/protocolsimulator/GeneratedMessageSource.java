@@ -0,0 +1,95 @@
+package protocolsimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates the messages AAA, BBB, ..., ZZZ, AAA, ... (with the letter
+ * repeated to the payload size) at the times given by a traffic pattern.
+ * The 26 messages are created once, so generating messages does not
+ * allocate.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class GeneratedMessageSource implements MessageSource
+{
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private final String[] mMessages = new String[LETTERS.length()];
+    private final TrafficSettings mTraffic;
+    private final SplittableRandom mRandom;
+    private final int mNumberOfMessages;
+    private int mIndex = -1;
+    private long mTime = 0, mOnUntil = 0;
+
+    /**
+     * Constructs a GeneratedMessageSource
+     *
+     * @param numberOfMessages Number of messages
+     * @param payloadSize Bytes in each message
+     * @param traffic The traffic pattern, Constant, Poisson or OnOff
+     * @param random Random numbers of the Poisson and OnOff patterns
+     */
+    public GeneratedMessageSource(int numberOfMessages, int payloadSize, TrafficSettings traffic, SplittableRandom random)
+    {
+        mNumberOfMessages = numberOfMessages;
+        mTraffic = traffic;
+        mRandom = random;
+
+        for(int i = 0; i < mMessages.length; i++)
+        {
+            mMessages[i] = LETTERS.substring(i, i + 1).repeat(payloadSize);
+        }
+    }
+
+    @Override
+    public boolean next()
+    {
+        if(mIndex + 1 >= mNumberOfMessages)
+        {
+            return false;
+        }
+        // The first message is sent at once
+        if(++mIndex == 0)
+        {
+            mOnUntil = this.exponential(mTraffic.onTime);
+            return true;
+        }
+
+        switch(mTraffic.pattern)
+        {
+            case Poisson:
+                mTime += this.exponential(mTraffic.interval);
+                break;
+            case OnOff:
+                mTime += mTraffic.interval;
+
+                if(mTime > mOnUntil)
+                {
+                    // The message starts the next on period
+                    mTime = mOnUntil + this.exponential(mTraffic.offTime);
+                    mOnUntil = mTime + this.exponential(mTraffic.onTime);
+                }
+                break;
+            default:
+                mTime += mTraffic.interval;
+        }
+        return true;
+    }
+
+    @Override
+    public long getTime()
+    {
+        return mTime;
+    }
+
+    @Override
+    public String getMessage()
+    {
+        return mMessages[mIndex % mMessages.length];
+    }
+
+    private long exponential(int mean)
+    {
+        return Math.round(-mean * Math.log(1 - mRandom.nextDouble()));
+    }
+}
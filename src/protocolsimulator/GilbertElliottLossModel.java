@@ -0,0 +1,44 @@
+package protocolsimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Affects segments in bursts. The link is either in a good or a bad state,
+ * each with its own probability of affecting a segment, and may change
+ * state before every segment. The average length of a burst in the bad
+ * state is 100 / badToGood segments.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class GilbertElliottLossModel implements LossModel
+{
+    private final double mGoodToBad, mBadToGood, mGoodProbability, mBadProbability;
+    private boolean mBad = false;
+
+    /**
+     * Constructs a GilbertElliottLossModel that starts in the good state
+     *
+     * @param goodToBad Probability in percent to change from the good to the bad state
+     * @param badToGood Probability in percent to change from the bad to the good state
+     * @param goodProbability Probability in percent that a segment is affected in the good state
+     * @param badProbability Probability in percent that a segment is affected in the bad state
+     */
+    public GilbertElliottLossModel(double goodToBad, double badToGood, double goodProbability, double badProbability)
+    {
+        mGoodToBad = goodToBad;
+        mBadToGood = badToGood;
+        mGoodProbability = goodProbability;
+        mBadProbability = badProbability;
+    }
+
+    @Override
+    public boolean isAffected(SplittableRandom random)
+    {
+        if(random.nextDouble() * 100 < (mBad ? mBadToGood : mGoodToBad))
+        {
+            mBad = !mBad;
+        }
+        return random.nextDouble() * 100 < (mBad ? mBadProbability : mGoodProbability);
+    }
+}
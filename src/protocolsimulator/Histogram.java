@@ -0,0 +1,152 @@
+package protocolsimulator;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative values with a fixed relative precision, in the
+ * style of HdrHistogram. Values below 128 are counted exactly, and larger
+ * values in buckets that are 1/64 of their power of two wide, so every
+ * value is within 1.6 % of the bucket it is counted in. Recording a value
+ * takes constant time, and the buckets only grow with the largest value.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Histogram
+{
+    private static final int SUB_BUCKETS = 128, HALF = SUB_BUCKETS / 2, HALF_BITS = 6;
+    private long[] mCounts = new long[SUB_BUCKETS];
+    private long mCount = 0, mSum = 0, mMin = Long.MAX_VALUE, mMax = 0;
+
+    /**
+     * Records a value
+     *
+     * @param value The value, negative values are counted as 0
+     */
+    public void record(long value)
+    {
+        value = Math.max(0, value);
+        int index = indexOf(value);
+
+        if(index >= mCounts.length)
+        {
+            mCounts = Arrays.copyOf(mCounts, Math.max(index + 1, mCounts.length * 2));
+        }
+        mCounts[index]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Adds the values recorded by another histogram, as if they had been
+     * recorded by this one
+     *
+     * @param other The other histogram
+     */
+    public void add(Histogram other)
+    {
+        if(other.mCounts.length > mCounts.length)
+        {
+            mCounts = Arrays.copyOf(mCounts, other.mCounts.length);
+        }
+        for(int i = 0; i < other.mCounts.length; i++)
+        {
+            mCounts[i] += other.mCounts[i];
+        }
+        mCount += other.mCount;
+        mSum += other.mSum;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    /**
+     * Gets the number of recorded values
+     *
+     * @return Number of values
+     */
+    public long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * Gets the smallest recorded value
+     *
+     * @return The smallest value, 0 if nothing is recorded
+     */
+    public long getMin()
+    {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    /**
+     * Gets the largest recorded value
+     *
+     * @return The largest value, 0 if nothing is recorded
+     */
+    public long getMax()
+    {
+        return mMax;
+    }
+
+    /**
+     * Gets the mean of the recorded values, which is exact
+     *
+     * @return The mean, 0 if nothing is recorded
+     */
+    public double getMean()
+    {
+        return mCount == 0 ? 0 : (double)mSum / mCount;
+    }
+
+    /**
+     * Gets the value at a percentile
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return The largest value of the bucket where the percentile is
+     *         reached, at most the largest recorded value, or 0 if nothing
+     *         is recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+
+        for(int i = 0; i < mCounts.length && mCount > 0; i++)
+        {
+            seen += mCounts[i];
+
+            if(seen >= rank)
+            {
+                return Math.min(highestValueOf(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    private static int indexOf(long value)
+    {
+        if(value < SUB_BUCKETS)
+        {
+            return (int)value;
+        }
+        // value >> shift is between HALF and SUB_BUCKETS - 1
+        int shift = 63 - Long.numberOfLeadingZeros(value) - HALF_BITS;
+
+        return SUB_BUCKETS + (shift - 1) * HALF + (int)(value >> shift) - HALF;
+    }
+
+    private static long highestValueOf(int index)
+    {
+        if(index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long first = (long)((index - SUB_BUCKETS) % HALF + HALF) << shift;
+
+        return first + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,244 @@
+package protocolsimulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A host in the simulation. The host is the view of the simulator that is
+ * given to the transport layer of the host, so that timers and segments can
+ * be traced back to the host that started or sent them.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Host implements LayerSimulator
+{
+    private final Simulator mSimulator;
+    private final String mId;
+    private final int mNumber;
+    private final Timer mTimer;
+    // The timers started with an id of 0 or more, such as sequence numbers,
+    // one per id, indexed by the id. A stopped timer gives way to a timer
+    // with another id, so the table only grows until it is larger than the
+    // span of the ids of the timers running at the same time.
+    private Timer[] mTimers = new Timer[16];
+    // The timers with negative ids, such as DelayedAck.TIMER_ID, which are
+    // few constants and would collide with the sequence numbers in the table
+    private final Map<Integer, Timer> mNegativeTimers = new HashMap<Integer, Timer>();
+    private TransportProtocol mTransportLayer = null;
+    private final Partition mPartition;
+    // Number of events of each type created for the host, for their keys
+    private final long[] mEventCounts = new long[Event.EventType.values().length];
+    
+    /**
+     * Constructs a Host
+     * 
+     * @param simulator The simulator the host belongs to
+     * @param number Number of the host, used in traces
+     * @param id Id for the host (A or B)
+     * @param partition The partition that handles the events of the host
+     */
+    Host(Simulator simulator, int number, String id, Partition partition)
+    {
+        mSimulator = simulator;
+        mNumber = number;
+        mId = id;
+        mPartition = partition;
+        mTimer = new Timer(this, Timer.DEFAULT_ID);
+    }
+    /**
+     * Gets the id of the host
+     * 
+     * @return Id for the host
+     */
+    public String getId()
+    {
+        return mId;
+    }
+    /**
+     * Gets the number of the host
+     * 
+     * @return Number of the host, used in traces
+     */
+    public int getNumber()
+    {
+        return mNumber;
+    }
+    /**
+     * Gets the partition that handles the events of the host
+     * 
+     * @return The partition
+     */
+    Partition getPartition()
+    {
+        return mPartition;
+    }
+    /**
+     * Gets the key of the next event of a type for the host. The keys order
+     * events with the same time by host, then by type, and then in the order
+     * they were created. Each type of event is only created in one place,
+     * timers by the host, messages by its flow and segments by its incoming
+     * link, so the keys are the same however the hosts are partitioned.
+     * 
+     * @param type Type of the event
+     * @return The key
+     */
+    long nextKey(Event.EventType type)
+    {
+        return ((long)mNumber << 42) | ((long)type.ordinal() << 40) | mEventCounts[type.ordinal()]++;
+    }
+    /**
+     * Gets the transport layer of the host
+     * 
+     * @return The transport layer
+     */
+    public TransportProtocol getTransportLayer()
+    {
+        return mTransportLayer;
+    }
+    /**
+     * Sets the transport layer of the host
+     * 
+     * @param transportLayer The transport layer
+     */
+    void setTransportLayer(TransportProtocol transportLayer)
+    {
+        mTransportLayer = transportLayer;
+    }
+    /**
+     * Called by the simulator when one of the timers of the host expires
+     * 
+     * @param timer The timer that expired
+     */
+    void timerInterrupt(Timer timer)
+    {
+        timer.expire();
+        // The timer of a delayed ACK is not a timeout, it is traced apart
+        if(timer.getId() == DelayedAck.TIMER_ID)
+        {
+            this.trace(TraceType.AckTimerFire, 0, 0, 0);
+        }
+        else
+        {
+            this.trace(TraceType.TimerFire, timer.getId(), 0, 0);
+        }
+        
+        if(timer.getId() == Timer.DEFAULT_ID)
+        {
+            mTransportLayer.timerInterrupt();
+        }
+        else
+        {
+            mTransportLayer.timerInterrupt(timer.getId());
+        }
+    }
+    
+    @Override
+    public void toApplicationLayer(String message)
+    {
+        mSimulator.toApplicationLayer(this, message);
+    }
+    
+    @Override
+    public void toNetworkLayer(Segment segment)
+    {
+        mSimulator.toNetworkLayer(this, segment);
+    }
+    
+    @Override
+    public void startTimer(int time)
+    {
+        mSimulator.startTimer(mTimer, time);
+    }
+    
+    @Override
+    public boolean isTimerActive()
+    {
+        return mTimer.isActive();
+    }
+    
+    @Override
+    public long getCurrentTime()
+    {
+        return mPartition.currentTime;
+    }
+    
+    @Override
+    public void resetTimer()
+    {
+        mTimer.cancel();
+    }
+    
+    @Override
+    public Timer startTimer(int timerId, int time)
+    {
+        Timer timer = this.getTimer(timerId);
+        
+        mSimulator.startTimer(timer, time);
+        return timer;
+    }
+    
+    /**
+     * Gets the timer with an id, constructing it if the id has no timer
+     * 
+     * @param timerId Id of the timer
+     * @return The timer
+     */
+    private Timer getTimer(int timerId)
+    {
+        if(timerId < 0)
+        {
+            Timer timer = mNegativeTimers.get(timerId);
+            
+            if(timer == null)
+            {
+                timer = new Timer(this, timerId);
+                mNegativeTimers.put(timerId, timer);
+            }
+            return timer;
+        }
+        int slot = timerId & (mTimers.length - 1);
+        Timer timer = mTimers[slot];
+        
+        if(timer != null && timer.getId() == timerId)
+        {
+            return timer;
+        }
+        if(timer != null && timer.isActive())
+        {
+            // Ids in different slots stay in different slots in a larger table
+            Timer[] timers = new Timer[mTimers.length * 2];
+            
+            for(Timer other : mTimers)
+            {
+                if(other != null)
+                {
+                    timers[other.getId() & (timers.length - 1)] = other;
+                }
+            }
+            mTimers = timers;
+            return this.getTimer(timerId);
+        }
+        timer = new Timer(this, timerId);
+        mTimers[slot] = timer;
+        return timer;
+    }
+    
+    @Override
+    public void print(String text)
+    {
+        mSimulator.print(text);
+    }
+    
+    @Override
+    public boolean isPrintEnabled()
+    {
+        return mSimulator.isPrintEnabled();
+    }
+    
+    @Override
+    public void trace(TraceType type, int first, int second, int third)
+    {
+        mSimulator.trace(type, mNumber, first, second, third);
+    }
+}
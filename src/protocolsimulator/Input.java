@@ -1,5 +1,7 @@
 package protocolsimulator;
 
+import java.util.Random;
+
 /**
  * Encapsulates all the user input for the simulation
  *
@@ -9,14 +11,33 @@ package protocolsimulator;
 public class Input
 {
     public int lossProbability, corruptionProbability, numberOfMessages, timerValue, windowSize;     
+    public EventQueue.Type eventQueueType = EventQueue.Type.BinaryHeap;
+    public long seed, timeLimit = 0;
+    public boolean adaptiveTimer = false;
+    public CongestionControl.Type congestionControl = CongestionControl.Type.None;
+    public LinkSettings linkAB = new LinkSettings(), linkBA = new LinkSettings();
+    public String protocolA = TransportProtocols.GO_BACK_N, protocolB = TransportProtocols.GO_BACK_N;
+    // Bytes in each message, the first letter repeated
+    public int payloadSize = 3;
+    public Segment.Checksum checksum = Segment.Checksum.Crc32c;
+    public TrafficSettings traffic = new TrafficSettings();
+    // Number of sending hosts, each with its own receiving host, that share the links
+    public int flows = 1;
+    // Number of groups of flows that are simulated in parallel, at most the number of flows
+    public int partitions = 1;
+    // true if the receiving hosts also send messages to the sending hosts
+    public boolean bidirectional = false;
+    // Longest time in ms that an ACK waits for a data segment to piggyback on, 0 to send every ACK at once
+    public int ackDelay = 0;
     
     /**
-     * Constructs an Input
+     * Constructs an Input. The seed for the random loss and corruption is
+     * chosen at random, set <code>seed</code> to repeat a simulation.
      * 
-     * @param timerValue Timer value to use in the simulation
+     * @param timerValue Timer value to use in the simulation, the initial timeout if <code>adaptiveTimer</code> is set
      * @param lossProbability Probability for loss of segments
      * @param corruptionProbability Probability for corruption of segments
-     * @param numberOfMessages Number of messages for the simulation
+     * @param numberOfMessages Number of messages for the simulation, the largest number when a file is replayed
      * @param windowSize Window size to use in the simulation
      */
     public Input(int timerValue, int lossProbability, int corruptionProbability, int numberOfMessages, int windowSize)
@@ -26,5 +47,33 @@ public class Input
         this.corruptionProbability = corruptionProbability;
         this.numberOfMessages = numberOfMessages;       
         this.windowSize = windowSize;
+        this.seed = new Random().nextLong();
+    }
+
+    /**
+     * Constructs a copy of an Input. The link and traffic settings are
+     * shared, they are not changed by the simulation.
+     *
+     * @param input The input to copy
+     */
+    public Input(Input input)
+    {
+        this(input.timerValue, input.lossProbability, input.corruptionProbability, input.numberOfMessages, input.windowSize);
+        eventQueueType = input.eventQueueType;
+        seed = input.seed;
+        timeLimit = input.timeLimit;
+        adaptiveTimer = input.adaptiveTimer;
+        congestionControl = input.congestionControl;
+        linkAB = input.linkAB;
+        linkBA = input.linkBA;
+        protocolA = input.protocolA;
+        protocolB = input.protocolB;
+        payloadSize = input.payloadSize;
+        checksum = input.checksum;
+        traffic = input.traffic;
+        flows = input.flows;
+        partitions = input.partitions;
+        bidirectional = input.bidirectional;
+        ackDelay = input.ackDelay;
     }
 }
\ No newline at end of file
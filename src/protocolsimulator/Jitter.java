@@ -0,0 +1,63 @@
+package protocolsimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distributions of the extra delay that a link adds to each segment. Since
+ * every segment gets its own delay, a segment may arrive before a segment
+ * that was sent before it.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public enum Jitter
+{
+    /** No extra delay */
+    None
+    {
+        @Override
+        public long sample(int scale, SplittableRandom random)
+        {
+            return 0;
+        }
+    },
+    /** Uniform between 0 and scale ms */
+    Uniform
+    {
+        @Override
+        public long sample(int scale, SplittableRandom random)
+        {
+            return (long)(random.nextDouble() * scale);
+        }
+    },
+    /** Exponential with a mean of scale ms */
+    Exponential
+    {
+        @Override
+        public long sample(int scale, SplittableRandom random)
+        {
+            return (long)(-scale * Math.log(1 - random.nextDouble()));
+        }
+    },
+    /** The absolute value of a normal distribution with a standard deviation of scale ms */
+    Normal
+    {
+        @Override
+        public long sample(int scale, SplittableRandom random)
+        {
+            // Box-Muller, SplittableRandom has no nextGaussian
+            double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+
+            return Math.round(Math.abs(gaussian) * scale);
+        }
+    };
+
+    /**
+     * Draws the extra delay of a segment
+     *
+     * @param scale Scale of the distribution in ms
+     * @param random Random numbers of the jitter
+     * @return Extra delay in ms, never negative
+     */
+    public abstract long sample(int scale, SplittableRandom random);
+}
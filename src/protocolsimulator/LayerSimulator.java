@@ -37,15 +37,56 @@ public interface LayerSimulator
      */
     public boolean isTimerActive();
     
+    /**
+     * Gets the simulated time
+     * 
+     * @return Time in milliseconds since the simulation started
+     */
+    public long getCurrentTime();
+    
     /**
      * Stops the timer if it is active. If no timer is active nothing is done 
      */
     public void resetTimer();
     
+    /**
+     * Starts the timer with the given id and time. The timer runs
+     * independently of the timer used by <code>startTimer(int)</code> and of
+     * timers with other ids, so a host can have one timer per segment in
+     * transit. Starting a timer that is running restarts it. When the timer
+     * expires <code>timerInterrupt(int)</code> is called on the transport
+     * layer with the id of the timer.
+     * 
+     * @param timerId Id that is reported when the timer expires, other than Timer.DEFAULT_ID
+     * @param time Time in milliseconds until the timer expires
+     * @return Handle that can be used to check or cancel the timer in constant time
+     */
+    public Timer startTimer(int timerId, int time);
+    
     /**
      * Prints text to the log
      * 
      * @param text Text that will we added to the log
      */
     public void print(String text);
+    
+    /**
+     * Checks if text sent to <code>print(String)</code> is used. Log text
+     * only needs to be built when printing is enabled.
+     * 
+     * @return true if printed text is added to the log
+     */
+    public boolean isPrintEnabled();
+    
+    /**
+     * Records a typed event in the trace of the simulation, if the
+     * simulation is traced. The simulated time and the host are added by
+     * the simulator.
+     * 
+     * @param type Type of the event
+     * @param first First number, see TraceType
+     * @param second Second number, see TraceType
+     * @param third Third number, see TraceType
+     */
+    public void trace(TraceType type, int first, int second, int third);
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package protocolsimulator;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * The link in one direction between the hosts, with the queue in front of
+ * it. Segments are sent into the link one at a time in the order they
+ * arrive, each taking its transmission time, and then propagate to the
+ * other host. A segment that arrives while the link is busy waits in the
+ * queue, and a limited queue drops segments when it is full (drop-tail) or
+ * with a probability that grows with the average queue length (RED).<br /><br />
+ *
+ * The link also decides the impairments of each segment: loss, corruption,
+ * jitter and duplication. Every impairment draws from its own random
+ * stream, so that e.g. adding jitter does not change which segments are
+ * lost.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Link
+{
+    private static final double RED_WEIGHT = 0.2, RED_MAX_PROBABILITY = 0.1;
+    private final LinkSettings mSettings;
+    private final SplittableRandom mRandom, mLossRandom, mCorruptionRandom, mJitterRandom, mDuplicationRandom;
+    private final LossModel mLossModel, mCorruptionModel;
+    private final int mMinThreshold, mMaxThreshold;
+    // Times when the segments in the queue and on the link are sent, in order
+    private long[] mDone = new long[16];
+    private int mHead = 0, mCount = 0;
+    private long mBusyUntil = 0;
+    private double mAverageQueue = 0;
+
+    /**
+     * Constructs a Link
+     *
+     * @param settings Settings of the link
+     * @param lossProbability Probability in percent of loss, unless the settings have one
+     * @param corruptionProbability Probability in percent of corruption, unless the settings have one
+     * @param random Random numbers of the link, split into one stream per impairment
+     */
+    public Link(LinkSettings settings, double lossProbability, double corruptionProbability, SplittableRandom random)
+    {
+        mSettings = settings;
+        mLossRandom = random.split();
+        mCorruptionRandom = random.split();
+        mJitterRandom = random.split();
+        mDuplicationRandom = random.split();
+        mRandom = random.split();
+        if(settings.lossProbability >= 0)
+        {
+            lossProbability = settings.lossProbability;
+        }
+        if(settings.corruptionProbability >= 0)
+        {
+            corruptionProbability = settings.corruptionProbability;
+        }
+        if(settings.burstGoodToBad > 0)
+        {
+            mLossModel = new GilbertElliottLossModel(settings.burstGoodToBad, settings.burstBadToGood,
+                lossProbability, settings.burstLoss);
+        }
+        else
+        {
+            mLossModel = new BernoulliLossModel(lossProbability);
+        }
+        mCorruptionModel = new BernoulliLossModel(corruptionProbability);
+        mMinThreshold = Math.max(1, settings.queueSize / 4);
+        mMaxThreshold = Math.max(mMinThreshold + 1, settings.queueSize * 3 / 4);
+    }
+
+    /**
+     * Puts a segment in the queue of the link
+     *
+     * @param time Simulated time when the segment arrives at the queue
+     * @param bytes Size of the segment
+     * @return Simulated time when the segment starts to be sent into the
+     *         link, or -1 if the queue dropped the segment
+     */
+    public long enqueue(long time, int bytes)
+    {
+        while(mCount > 0 && mDone[mHead] <= time)
+        {
+            mHead = (mHead + 1) & (mDone.length - 1);
+            mCount--;
+        }
+        // The segment that is being sent is not in the queue
+        int waiting = Math.max(0, mCount - 1);
+
+        if(mSettings.queueSize > 0 && this.drop(waiting))
+        {
+            return -1;
+        }
+        long start = Math.max(time, mBusyUntil);
+
+        mBusyUntil = start + mSettings.getTransmissionTime(bytes);
+        this.add(mBusyUntil);
+        return start;
+    }
+
+    /**
+     * Gets the time when a segment arrives at the other host
+     *
+     * @param start Simulated time when the segment starts to be sent
+     * @param bytes Size of the segment
+     * @return Simulated time of the arrival
+     */
+    public long getArrivalTime(long start, int bytes)
+    {
+        return start + mSettings.getTransmissionTime(bytes) + mSettings.propagationDelay;
+    }
+
+    /**
+     * Decides if the next segment is lost on the link
+     *
+     * @return true if the segment is lost
+     */
+    public boolean isLost()
+    {
+        return mLossModel.isAffected(mLossRandom);
+    }
+
+    /**
+     * Decides if the next segment is corrupted on the link
+     *
+     * @return true if the segment is corrupted
+     */
+    public boolean isCorrupted()
+    {
+        return mCorruptionModel.isAffected(mCorruptionRandom);
+    }
+
+    /**
+     * Corrupts a segment by flipping bits of its bytes on the link. One bit
+     * is always flipped and every further bit with the probability 1/2, so
+     * that a few segments get errors that a weak checksum misses.
+     *
+     * @param segment The segment
+     * @return The segment decoded from the corrupted bytes
+     */
+    public Segment corrupt(Segment segment)
+    {
+        ByteBuffer data = segment.encode();
+        int bits = data.limit() * 8;
+
+        do
+        {
+            int bit = mCorruptionRandom.nextInt(bits);
+
+            data.put(bit >>> 3, (byte)(data.get(bit >>> 3) ^ (1 << (bit & 7))));
+        }
+        while(mCorruptionRandom.nextBoolean());
+
+        return Segment.decode(segment.from, data);
+    }
+
+    /**
+     * Draws the extra delay of the next segment
+     *
+     * @return Extra delay in ms
+     */
+    public long getJitter()
+    {
+        return mSettings.jitter.sample(mSettings.jitterScale, mJitterRandom);
+    }
+
+    /**
+     * Decides if the next segment arrives twice
+     *
+     * @return true if the segment is duplicated
+     */
+    public boolean isDuplicated()
+    {
+        return mSettings.duplicationProbability > 0
+            && mDuplicationRandom.nextDouble() * 100 < mSettings.duplicationProbability;
+    }
+
+    /**
+     * Decides if an arriving segment is dropped
+     *
+     * @param waiting Number of segments waiting in the queue
+     * @return true if the segment is dropped
+     */
+    private boolean drop(int waiting)
+    {
+        if(mSettings.discipline == LinkSettings.Discipline.RED)
+        {
+            mAverageQueue += RED_WEIGHT * (waiting - mAverageQueue);
+        }
+        if(waiting >= mSettings.queueSize)
+        {
+            return true;
+        }
+        if(mSettings.discipline != LinkSettings.Discipline.RED || mAverageQueue < mMinThreshold)
+        {
+            return false;
+        }
+        if(mAverageQueue >= mMaxThreshold)
+        {
+            return true;
+        }
+        double probability = RED_MAX_PROBABILITY * (mAverageQueue - mMinThreshold) / (mMaxThreshold - mMinThreshold);
+
+        return mRandom.nextDouble() < probability;
+    }
+
+    private void add(long done)
+    {
+        if(mCount == mDone.length)
+        {
+            long[] grown = new long[mDone.length * 2];
+
+            for(int i = 0; i < mCount; i++)
+            {
+                grown[i] = mDone[(mHead + i) & (mDone.length - 1)];
+            }
+            mDone = grown;
+            mHead = 0;
+        }
+        mDone[(mHead + mCount) & (mDone.length - 1)] = done;
+        mCount++;
+    }
+}
@@ -0,0 +1,260 @@
+package protocolsimulator;
+
+/**
+ * Encapsulates the settings of the link in one direction between the hosts.
+ * The default settings give the timing of the original simulator: every
+ * segment takes 100 ms to send and 900 ms to propagate, and the queue
+ * before the link is unlimited. Segments are lost and corrupted
+ * independently with the probabilities given in Input.<br /><br />
+ *
+ * The settings can be given as a specification of comma separated keys,
+ * e.g. <code>bandwidth=64k,delay=200,queue=20,red</code>:<br />
+ * <code>bandwidth</code> bits per second, with an optional k or M suffix.
+ * 0 gives every segment the same transmission time<br />
+ * <code>transmission</code> transmission time in ms when the bandwidth is 0<br />
+ * <code>delay</code> propagation delay in ms<br />
+ * <code>queue</code> number of segments that may wait for the link, 0 for no limit<br />
+ * <code>droptail</code> or <code>red</code> how a limited queue drops segments<br />
+ * <code>loss</code> probability in percent that a segment is lost, decimals allowed<br />
+ * <code>corruption</code> probability in percent that a segment is corrupted<br />
+ * <code>burst=P:R[:BAD]</code> burst loss (Gilbert-Elliott), P and R are the
+ * probabilities in percent to go from the good to the bad state and back, and
+ * BAD the loss in the bad state (default 100). The loss in the good state is
+ * <code>loss</code><br />
+ * <code>jitter=TYPE:MS</code> extra delay of each segment, see Jitter, e.g. <code>jitter=uniform:300</code><br />
+ * <code>duplicate</code> probability in percent that a segment arrives twice
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class LinkSettings
+{
+    /**
+     * How a limited queue decides to drop an arriving segment
+     */
+    public enum Discipline {DropTail, RED};
+
+    public long bandwidth = 0;
+    public int transmissionTime = 100, propagationDelay = 900, queueSize = 0;
+    public Discipline discipline = Discipline.DropTail;
+    // A negative probability means the probability of Input
+    public double lossProbability = -1, corruptionProbability = -1, duplicationProbability = 0;
+    public double burstGoodToBad = 0, burstBadToGood = 100, burstLoss = 100;
+    public Jitter jitter = Jitter.None;
+    public int jitterScale = 0;
+
+    /**
+     * Parses a specification of link settings. Keys that are not given keep
+     * their default value, and an empty specification gives the default
+     * settings.
+     *
+     * @param spec The specification, see the class description
+     * @return The settings
+     * @throws IllegalArgumentException If the specification is invalid
+     */
+    public static LinkSettings parse(String spec)
+    {
+        LinkSettings settings = new LinkSettings();
+
+        for(String part : spec.split(","))
+        {
+            String key = part.trim(), value = null;
+            int separator = key.indexOf('=');
+
+            if(key.isEmpty())
+            {
+                continue;
+            }
+            if(separator >= 0)
+            {
+                value = key.substring(separator + 1).trim();
+                key = key.substring(0, separator).trim();
+            }
+
+            try
+            {
+                if(key.equals("bandwidth") && value != null)
+                {
+                    settings.bandwidth = parseBandwidth(value);
+                }
+                else if(key.equals("transmission") && value != null)
+                {
+                    settings.transmissionTime = parseNumber(value);
+                }
+                else if(key.equals("delay") && value != null)
+                {
+                    settings.propagationDelay = parseNumber(value);
+                }
+                else if(key.equals("queue") && value != null)
+                {
+                    settings.queueSize = parseNumber(value);
+                }
+                else if(key.equals("droptail") && value == null)
+                {
+                    settings.discipline = Discipline.DropTail;
+                }
+                else if(key.equals("red") && value == null)
+                {
+                    settings.discipline = Discipline.RED;
+                }
+                else if(key.equals("loss") && value != null)
+                {
+                    settings.lossProbability = parseProbability(value);
+                }
+                else if(key.equals("corruption") && value != null)
+                {
+                    settings.corruptionProbability = parseProbability(value);
+                }
+                else if(key.equals("duplicate") && value != null)
+                {
+                    settings.duplicationProbability = parseProbability(value);
+                }
+                else if(key.equals("burst") && value != null)
+                {
+                    String[] values = value.split(":");
+
+                    if(values.length < 2 || values.length > 3)
+                    {
+                        throw new NumberFormatException();
+                    }
+                    settings.burstGoodToBad = parseProbability(values[0]);
+                    settings.burstBadToGood = parseProbability(values[1]);
+                    settings.burstLoss = values.length == 3 ? parseProbability(values[2]) : 100;
+                }
+                else if(key.equals("jitter") && value != null)
+                {
+                    String[] values = value.split(":");
+
+                    if(values.length != 2)
+                    {
+                        throw new NumberFormatException();
+                    }
+                    settings.jitter = parseJitter(values[0]);
+                    settings.jitterScale = parseNumber(values[1]);
+                }
+                else
+                {
+                    throw new IllegalArgumentException("ogiltig länkinställning " + part.trim());
+                }
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IllegalArgumentException("ogiltig länkinställning " + part.trim());
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Gets the time it takes to send a segment into the link
+     *
+     * @param bytes Size of the segment in bytes
+     * @return Transmission time in ms
+     */
+    public long getTransmissionTime(int bytes)
+    {
+        if(bandwidth == 0)
+        {
+            return transmissionTime;
+        }
+        // Rounded up, so that a segment always takes some time
+        return (bytes * 8000L + bandwidth - 1) / bandwidth;
+    }
+
+    /**
+     * Gets the settings as a specification that <code>parse</code> accepts
+     *
+     * @return The specification
+     */
+    @Override
+    public String toString()
+    {
+        String spec = bandwidth == 0 ? "transmission=" + transmissionTime : "bandwidth=" + bandwidth;
+
+        spec += ",delay=" + propagationDelay + ",queue=" + queueSize;
+        if(discipline == Discipline.RED)
+        {
+            spec += ",red";
+        }
+        if(lossProbability >= 0)
+        {
+            spec += ",loss=" + lossProbability;
+        }
+        if(corruptionProbability >= 0)
+        {
+            spec += ",corruption=" + corruptionProbability;
+        }
+        if(burstGoodToBad > 0)
+        {
+            spec += ",burst=" + burstGoodToBad + ":" + burstBadToGood + ":" + burstLoss;
+        }
+        if(jitter != Jitter.None)
+        {
+            spec += ",jitter=" + jitter.name().toLowerCase() + ":" + jitterScale;
+        }
+        if(duplicationProbability > 0)
+        {
+            spec += ",duplicate=" + duplicationProbability;
+        }
+        return spec;
+    }
+
+    private static long parseBandwidth(String value)
+    {
+        long factor = 1;
+
+        if(value.endsWith("k"))
+        {
+            factor = 1000;
+        }
+        else if(value.endsWith("M"))
+        {
+            factor = 1000000;
+        }
+        if(factor > 1)
+        {
+            value = value.substring(0, value.length() - 1);
+        }
+        long bandwidth = Long.parseLong(value) * factor;
+
+        if(bandwidth < 0)
+        {
+            throw new NumberFormatException();
+        }
+        return bandwidth;
+    }
+
+    private static double parseProbability(String value)
+    {
+        double probability = Double.parseDouble(value);
+
+        if(!(probability >= 0 && probability <= 100))
+        {
+            throw new NumberFormatException();
+        }
+        return probability;
+    }
+
+    private static Jitter parseJitter(String value)
+    {
+        for(Jitter jitter : Jitter.values())
+        {
+            if(jitter.name().equalsIgnoreCase(value))
+            {
+                return jitter;
+            }
+        }
+        throw new NumberFormatException();
+    }
+
+    private static int parseNumber(String value)
+    {
+        int number = Integer.parseInt(value);
+
+        if(number < 0)
+        {
+            throw new NumberFormatException();
+        }
+        return number;
+    }
+}
@@ -0,0 +1,104 @@
+package protocolsimulator;
+
+import java.util.Arrays;
+
+/**
+ * Bounded log that keeps the latest lines in a ring buffer. When the buffer
+ * is full the oldest line is overwritten, so adding a line takes constant
+ * time and the log never grows beyond its limit. The buffer may be written
+ * and read from different threads.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class LogBuffer
+{
+    private String[] mLines;
+    private int mFirst = 0, mCount = 0;
+    private long mVersion = 0;
+    
+    /**
+     * Constructs a LogBuffer
+     * 
+     * @param limit Maximum number of lines kept
+     */
+    public LogBuffer(int limit)
+    {
+        mLines = new String[Math.max(1, limit)];
+    }
+    /**
+     * Adds a line, overwriting the oldest line if the buffer is full
+     * 
+     * @param line The line to add
+     */
+    public synchronized void add(String line)
+    {
+        if(mCount < mLines.length)
+        {
+            mLines[(mFirst + mCount++) % mLines.length] = line;
+        }
+        else
+        {
+            mLines[mFirst] = line;
+            mFirst = (mFirst + 1) % mLines.length;
+        }
+        mVersion++;
+    }
+    /**
+     * Removes all lines
+     */
+    public synchronized void clear()
+    {
+        Arrays.fill(mLines, null);
+        mFirst = 0;
+        mCount = 0;
+        mVersion++;
+    }
+    /**
+     * Changes the maximum number of lines, keeping the latest lines
+     * 
+     * @param limit Maximum number of lines kept
+     */
+    public synchronized void setLimit(int limit)
+    {
+        String[] lines = new String[Math.max(1, limit)];
+        int count = Math.min(mCount, lines.length);
+        
+        for(int i = 0; i < count; i++)
+        {
+            lines[i] = mLines[(mFirst + mCount - count + i) % mLines.length];
+        }
+        mLines = lines;
+        mFirst = 0;
+        mCount = count;
+        mVersion++;
+    }
+    /**
+     * Gets a number that changes every time the log is changed
+     * 
+     * @return Version of the log
+     */
+    public synchronized long getVersion()
+    {
+        return mVersion;
+    }
+    /**
+     * Gets the log with the latest line first
+     * 
+     * @return The lines separated by new lines
+     */
+    public synchronized String getText()
+    {
+        StringBuilder text = new StringBuilder();
+        
+        for(int i = mCount - 1; i >= 0; i--)
+        {
+            text.append(mLines[(mFirst + i) % mLines.length]);
+            if(i > 0)
+            {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+}
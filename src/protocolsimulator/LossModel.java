@@ -0,0 +1,23 @@
+package protocolsimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides which segments on a link are affected by an impairment, e.g.
+ * lost or corrupted. The model is asked once for every segment, in the
+ * order the segments are sent, so a model may keep a state between
+ * segments.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface LossModel
+{
+    /**
+     * Decides if the next segment is affected
+     *
+     * @param random Random numbers of the impairment
+     * @return true if the segment is affected
+     */
+    public boolean isAffected(SplittableRandom random);
+}
@@ -0,0 +1,33 @@
+package protocolsimulator;
+
+/**
+ * Source of the messages that the application layer of host A gives to its
+ * transport layer. The simulator pulls one message at a time, so a source
+ * only holds the current message and long runs use constant memory.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface MessageSource
+{
+    /**
+     * Moves to the next message
+     *
+     * @return true if there is a next message, false if the source is empty
+     */
+    public boolean next();
+
+    /**
+     * Gets the time of the current message. The times never decrease.
+     *
+     * @return Simulated time in ms when the message is sent
+     */
+    public long getTime();
+
+    /**
+     * Gets the current message
+     *
+     * @return The message
+     */
+    public String getMessage();
+}
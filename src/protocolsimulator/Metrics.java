@@ -0,0 +1,292 @@
+package protocolsimulator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named metrics of a simulation: counters, histograms and values. The
+ * counters and histograms are looked up once by name and then updated
+ * directly, so updating them in the hot paths only costs a field update.
+ * Values are set when the results are collected, e.g. goodput.<br /><br />
+ *
+ * The metrics are exported in the order they were registered, as columns
+ * for CSV or as a JSON object. A histogram becomes the columns
+ * <code>NAME.count</code>, <code>.mean</code>, <code>.min</code>,
+ * <code>.p50</code>, <code>.p90</code>, <code>.p99</code> and
+ * <code>.max</code>.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Metrics
+{
+    private static final String[] HISTOGRAM_COLUMNS = {"count", "mean", "min", "p50", "p90", "p99", "max"};
+    private final Map<String, Object> mMetrics = new LinkedHashMap<String, Object>();
+
+    /**
+     * A counter that only grows
+     */
+    public static class Counter
+    {
+        private long mValue = 0;
+
+        /**
+         * Adds one to the counter
+         */
+        public void increment()
+        {
+            mValue++;
+        }
+
+        /**
+         * Adds to the counter
+         *
+         * @param amount The amount to add
+         */
+        public void add(long amount)
+        {
+            mValue += amount;
+        }
+
+        /**
+         * Gets the value of the counter
+         *
+         * @return The value
+         */
+        public long get()
+        {
+            return mValue;
+        }
+    }
+
+    /**
+     * Gets a counter, registering it if it does not exist
+     *
+     * @param name Name of the counter
+     * @return The counter
+     * @throws IllegalArgumentException If the name is used by another kind of metric
+     */
+    public Counter counter(String name)
+    {
+        Object metric = this.register(name, new Counter());
+
+        if(!(metric instanceof Counter))
+        {
+            throw new IllegalArgumentException("metric " + name + " is not a counter");
+        }
+        return (Counter)metric;
+    }
+
+    /**
+     * Gets a histogram, registering it if it does not exist
+     *
+     * @param name Name of the histogram
+     * @return The histogram
+     * @throws IllegalArgumentException If the name is used by another kind of metric
+     */
+    public Histogram histogram(String name)
+    {
+        Object metric = this.register(name, new Histogram());
+
+        if(!(metric instanceof Histogram))
+        {
+            throw new IllegalArgumentException("metric " + name + " is not a histogram");
+        }
+        return (Histogram)metric;
+    }
+
+    /**
+     * Sets a value, registering it if it does not exist
+     *
+     * @param name Name of the value
+     * @param value The value
+     */
+    public void set(String name, double value)
+    {
+        mMetrics.put(name, value);
+    }
+
+    /**
+     * Adds the counters and histograms of another registry to the ones with
+     * the same names, registering them if they do not exist. Values are not
+     * added, they are set from the totals.
+     *
+     * @param other The other registry
+     * @throws IllegalArgumentException If a name is used by another kind of metric
+     */
+    public void add(Metrics other)
+    {
+        for(Map.Entry<String, Object> entry : other.mMetrics.entrySet())
+        {
+            if(entry.getValue() instanceof Counter)
+            {
+                this.counter(entry.getKey()).add(((Counter)entry.getValue()).get());
+            }
+            else if(entry.getValue() instanceof Histogram)
+            {
+                this.histogram(entry.getKey()).add((Histogram)entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets a counter or value as a number
+     *
+     * @param name Name of the counter or value
+     * @return The number, or NaN if there is no counter or value with the name
+     */
+    public double getValue(String name)
+    {
+        Object metric = mMetrics.get(name);
+
+        if(metric instanceof Counter)
+        {
+            return ((Counter)metric).get();
+        }
+        return metric instanceof Double ? (Double)metric : Double.NaN;
+    }
+
+    /**
+     * Gets the names of the columns, in the same order as
+     * <code>getColumnValues</code>
+     *
+     * @return The names
+     */
+    public List<String> getColumnNames()
+    {
+        List<String> names = new ArrayList<String>();
+
+        for(Map.Entry<String, Object> entry : mMetrics.entrySet())
+        {
+            if(entry.getValue() instanceof Histogram)
+            {
+                for(String column : HISTOGRAM_COLUMNS)
+                {
+                    names.add(entry.getKey() + "." + column);
+                }
+            }
+            else
+            {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Gets the values of the columns as numbers, e.g. to aggregate several
+     * simulations
+     *
+     * @return The values
+     */
+    public double[] getColumnNumbers()
+    {
+        List<String> names = this.getColumnNames();
+        double[] numbers = new double[names.size()];
+        int column = 0;
+
+        for(Object metric : mMetrics.values())
+        {
+            if(metric instanceof Histogram)
+            {
+                Histogram histogram = (Histogram)metric;
+
+                numbers[column++] = histogram.getCount();
+                numbers[column++] = histogram.getMean();
+                numbers[column++] = histogram.getMin();
+                numbers[column++] = histogram.getPercentile(50);
+                numbers[column++] = histogram.getPercentile(90);
+                numbers[column++] = histogram.getPercentile(99);
+                numbers[column++] = histogram.getMax();
+            }
+            else if(metric instanceof Counter)
+            {
+                numbers[column++] = ((Counter)metric).get();
+            }
+            else
+            {
+                numbers[column++] = (Double)metric;
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Gets the values of the columns
+     *
+     * @return The values formatted as numbers
+     */
+    public List<String> getColumnValues()
+    {
+        List<String> values = new ArrayList<String>();
+
+        for(double number : this.getColumnNumbers())
+        {
+            values.add(format(number));
+        }
+        return values;
+    }
+
+    /**
+     * Gets the metrics as a JSON object, with a histogram as a nested object
+     *
+     * @return The JSON text
+     */
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder("{");
+        List<String> values = this.getColumnValues();
+        int column = 0;
+
+        for(Map.Entry<String, Object> entry : mMetrics.entrySet())
+        {
+            if(json.length() > 1)
+            {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":");
+
+            if(entry.getValue() instanceof Histogram)
+            {
+                json.append('{');
+
+                for(int i = 0; i < HISTOGRAM_COLUMNS.length; i++)
+                {
+                    json.append(i > 0 ? "," : "").append('"').append(HISTOGRAM_COLUMNS[i]).append("\":").append(values.get(column++));
+                }
+                json.append('}');
+            }
+            else
+            {
+                json.append(values.get(column++));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private Object register(String name, Object metric)
+    {
+        Object existing = mMetrics.putIfAbsent(name, metric);
+
+        return existing == null ? metric : existing;
+    }
+
+    /**
+     * Formats a number as a CSV or JSON value, whole numbers without
+     * decimals
+     *
+     * @param value The number
+     * @return The formatted number
+     */
+    static String format(double value)
+    {
+        // JSON has no NaN or infinity
+        if(Double.isNaN(value) || Double.isInfinite(value))
+        {
+            return "0";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long)value) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,56 @@
+package protocolsimulator;
+
+/**
+ * Congestion control of TCP NewReno (RFC 6582). Like Reno, but fast
+ * recovery only ends when every segment that was sent before the loss has
+ * been acknowledged. A partial acknowledgement during fast recovery means
+ * that one more segment was lost, and it is retransmitted at once instead
+ * of waiting for a timeout.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class NewRenoCongestionControl extends RenoCongestionControl
+{
+    private int mRecover = -1;
+
+    /**
+     * Constructs a NewRenoCongestionControl
+     *
+     * @param layers Gives the simulated time and receives the trace
+     * @param receiverWindow Window of the receiver in segments, also the initial slow start threshold
+     */
+    public NewRenoCongestionControl(LayerSimulator layers, int receiverWindow)
+    {
+        super(layers, receiverWindow);
+    }
+
+    @Override
+    public boolean onAck(int ack, int acked)
+    {
+        if(!mFastRecovery || ack >= mRecover)
+        {
+            return super.onAck(ack, acked);
+        }
+        // Partial acknowledgement, deflate by the acknowledged segments
+        mCongestionWindow = Math.max(1, mCongestionWindow - acked + 1);
+        this.trace();
+        return true;
+    }
+
+    /**
+     * Duplicates for segments sent before the last loss do not start a new
+     * recovery, they are caused by the retransmissions
+     */
+    @Override
+    protected boolean mayRecover(int ack)
+    {
+        return !mFastRecovery && ack >= mRecover;
+    }
+
+    @Override
+    protected void enterRecovery(int highestSent)
+    {
+        mRecover = highestSent;
+    }
+}
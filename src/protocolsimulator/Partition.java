@@ -0,0 +1,120 @@
+package protocolsimulator;
+
+import java.util.Arrays;
+
+/**
+ * A group of flows whose hosts are simulated together: their events, their
+ * clock and their statistics. The sequential simulation handles the events
+ * of all partitions in order, and the parallel simulation handles each
+ * partition in its own task, see <code>Simulator.run</code>.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+class Partition
+{
+    final EventQueue events;
+    // Null unless the events are released after they are handled
+    EventPool pool = null;
+    long currentTime = 0, eventsHandled = 0, segmentsSent = 0, retransmissions = 0, queueDrops = 0;
+    final Metrics metrics;
+    // Indexed by side, the sending hosts are side 0 and the receiving hosts
+    // side 1, and for the counters by type
+    final Metrics.Counter[][] traceCounters = new Metrics.Counter[2][];
+    final Histogram[] rtt = new Histogram[2], window = new Histogram[2];
+    final Histogram delay;
+    // Parallel simulation: the segments sent into each link during the
+    // window, and the key of the event being handled and how many segments
+    // it has sent, to order the segments the same way as the sequential
+    // simulation does
+    SendBuffer[] sends = null;
+    long handledKey = 0;
+    int handledSends = 0;
+
+    /**
+     * Constructs a Partition
+     *
+     * @param events Queue of the events, null for a partition that only
+     *        holds the statistics
+     * @param metrics Registry for the statistics
+     */
+    Partition(EventQueue events, Metrics metrics)
+    {
+        this.events = events;
+        this.metrics = metrics;
+        delay = metrics.histogram("delay");
+
+        // The metrics have the same names for any number of flows
+        String[] sides = {"A", "B"};
+
+        for(int side = 0; side < sides.length; side++)
+        {
+            rtt[side] = metrics.histogram(sides[side] + ".rtt");
+            window[side] = metrics.histogram(sides[side] + ".window");
+        }
+        for(int side = 0; side < sides.length; side++)
+        {
+            TraceType[] types = TraceType.values();
+
+            traceCounters[side] = new Metrics.Counter[types.length];
+
+            for(TraceType type : types)
+            {
+                String name = type.name().substring(0, 1).toLowerCase() + type.name().substring(1);
+
+                traceCounters[side][type.ordinal()] = metrics.counter(sides[side] + "." + name);
+            }
+        }
+    }
+
+    /**
+     * Segments sent into a link, in the order they were sent
+     */
+    static class SendBuffer
+    {
+        long[] times = new long[64], keys = new long[64];
+        int[] indexes = new int[64], hosts = new int[64];
+        Segment[] segments = new Segment[64];
+        int size = 0;
+
+        void add(long time, long key, int index, int host, Segment segment)
+        {
+            if(size == times.length)
+            {
+                times = Arrays.copyOf(times, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+                indexes = Arrays.copyOf(indexes, size * 2);
+                hosts = Arrays.copyOf(hosts, size * 2);
+                segments = Arrays.copyOf(segments, size * 2);
+            }
+            times[size] = time;
+            keys[size] = key;
+            indexes[size] = index;
+            hosts[size] = host;
+            segments[size++] = segment;
+        }
+
+        /**
+         * Checks if the segment at a position was sent before the segment at
+         * a position in another buffer
+         */
+        boolean isBefore(int position, SendBuffer other, int otherPosition)
+        {
+            if(times[position] != other.times[otherPosition])
+            {
+                return times[position] < other.times[otherPosition];
+            }
+            if(keys[position] != other.keys[otherPosition])
+            {
+                return keys[position] < other.keys[otherPosition];
+            }
+            return indexes[position] < other.indexes[otherPosition];
+        }
+
+        void clear()
+        {
+            Arrays.fill(segments, 0, size, null);
+            size = 0;
+        }
+    }
+}
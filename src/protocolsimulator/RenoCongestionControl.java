@@ -0,0 +1,158 @@
+package protocolsimulator;
+
+/**
+ * Congestion control of TCP Reno (RFC 5681). The window grows by one
+ * segment per acknowledged segment in slow start and by one segment per
+ * window in congestion avoidance. Three duplicate acknowledgements give a
+ * fast retransmit and halve the window, and the window is inflated by the
+ * following duplicates until new data is acknowledged. A timeout restarts
+ * from a window of one segment. Outside fast recovery the window never
+ * grows beyond the window of the receiver, since the sender could not use it.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class RenoCongestionControl implements CongestionControl
+{
+    protected static final int DUPLICATE_ACK_THRESHOLD = 3;
+    protected final LayerSimulator mLayerSimulator;
+    protected double mCongestionWindow = 1;
+    protected int mSlowStartThreshold;
+    protected final int mReceiverWindow;
+    protected int mDuplicateAcks = 0;
+    protected boolean mFastRecovery = false;
+    private int mTracedWindow = -1, mTracedThreshold = -1;
+
+    /**
+     * Constructs a RenoCongestionControl
+     *
+     * @param layers Gives the simulated time and receives the trace
+     * @param receiverWindow Window of the receiver in segments, also the initial slow start threshold
+     */
+    public RenoCongestionControl(LayerSimulator layers, int receiverWindow)
+    {
+        mLayerSimulator = layers;
+        mReceiverWindow = receiverWindow;
+        mSlowStartThreshold = receiverWindow;
+    }
+
+    @Override
+    public int getWindow()
+    {
+        return (int)Math.max(1, mCongestionWindow);
+    }
+
+    @Override
+    public boolean onAck(int ack, int acked)
+    {
+        mDuplicateAcks = 0;
+
+        if(mFastRecovery)
+        {
+            // Deflate the window inflated by the duplicate acknowledgements
+            mCongestionWindow = mSlowStartThreshold;
+            mFastRecovery = false;
+        }
+        else if(mCongestionWindow < mSlowStartThreshold)
+        {
+            mCongestionWindow += acked;
+        }
+        else
+        {
+            this.increase(acked);
+        }
+        mCongestionWindow = Math.min(mCongestionWindow, mReceiverWindow);
+        this.trace();
+        return false;
+    }
+
+    @Override
+    public boolean onDuplicateAck(int ack, int inFlight, int highestSent)
+    {
+        mDuplicateAcks++;
+
+        if(mDuplicateAcks == DUPLICATE_ACK_THRESHOLD && this.mayRecover(ack))
+        {
+            mSlowStartThreshold = this.decrease(inFlight);
+            mCongestionWindow = mSlowStartThreshold + DUPLICATE_ACK_THRESHOLD;
+            mFastRecovery = true;
+            this.enterRecovery(highestSent);
+            this.trace();
+            return true;
+        }
+        if(mFastRecovery)
+        {
+            // Every duplicate means that a segment has left the network
+            mCongestionWindow++;
+            this.trace();
+        }
+        return false;
+    }
+
+    @Override
+    public void onTimeout(int inFlight, int highestSent)
+    {
+        mSlowStartThreshold = this.decrease(inFlight);
+        mCongestionWindow = 1;
+        mDuplicateAcks = 0;
+        mFastRecovery = false;
+        this.enterRecovery(highestSent);
+        this.trace();
+    }
+
+    /**
+     * Grows the window in congestion avoidance
+     *
+     * @param acked Number of segments that were acknowledged
+     */
+    protected void increase(int acked)
+    {
+        mCongestionWindow += acked / mCongestionWindow;
+    }
+
+    /**
+     * Gets the slow start threshold after a loss
+     *
+     * @param inFlight Number of segments that are unacknowledged
+     * @return The new slow start threshold
+     */
+    protected int decrease(int inFlight)
+    {
+        return Math.max(inFlight / 2, 2);
+    }
+
+    /**
+     * Checks if a fast retransmit may start a new recovery
+     *
+     * @param ack Sequence number of the duplicate acknowledgement
+     * @return true if a fast retransmit may be done
+     */
+    protected boolean mayRecover(int ack)
+    {
+        return !mFastRecovery;
+    }
+
+    /**
+     * Called when a loss has been detected
+     *
+     * @param highestSent Sequence number of the highest segment sent
+     */
+    protected void enterRecovery(int highestSent)
+    {
+    }
+
+    /**
+     * Traces the window if it has changed
+     */
+    protected void trace()
+    {
+        int window = (int)(mCongestionWindow * 1000);
+
+        if(window != mTracedWindow || mSlowStartThreshold != mTracedThreshold)
+        {
+            mTracedWindow = window;
+            mTracedThreshold = mSlowStartThreshold;
+            mLayerSimulator.trace(TraceType.CongestionWindow, this.getWindow(), mSlowStartThreshold, window);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package protocolsimulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs independently seeded replications of the same simulation on a
+ * fork-join pool and aggregates every metric of the simulations, see
+ * <code>Simulator.getMetrics</code>, into a mean and a 95 % confidence
+ * interval.<br /><br />
+ *
+ * The seeds of the replications are drawn from the seed of the input, so
+ * the same input gives the same replications. The replications are run in
+ * rounds of as many as the pool has threads. With a precision set, the
+ * replications stop at the first replication, in seed order, after which
+ * the confidence interval of the precision metric is at most the precision
+ * times its mean. The results are therefore the same for any number of
+ * threads.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Replications
+{
+    public int minReplications = 2, maxReplications = 30;
+    // Largest half width of the confidence interval relative to the mean, 0 to run all replications
+    public double precision = 0;
+    public String precisionMetric = "goodput";
+    private final Input mInput;
+    private List<String> mNames = null;
+    private Statistics[] mStatistics = null;
+    private int mCorrect = 0;
+
+    /**
+     * Constructs a Replications
+     *
+     * @param input Input of the simulation, its seed is the seed of the replications
+     */
+    public Replications(Input input)
+    {
+        mInput = input;
+    }
+
+    /**
+     * Runs the replications
+     *
+     * @param pool The pool to run the replications on, ignored if called
+     *        from a task of a pool, whose threads are used instead
+     * @throws IllegalArgumentException If the precision metric does not exist
+     */
+    public void run(ForkJoinPool pool)
+    {
+        Rounds rounds = new Rounds(ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : pool.getParallelism());
+
+        if(ForkJoinTask.inForkJoinPool())
+        {
+            rounds.invoke();
+        }
+        else
+        {
+            pool.invoke(rounds);
+        }
+    }
+
+    /**
+     * Gets the number of replications that were run
+     *
+     * @return Number of replications
+     */
+    public int getReplications()
+    {
+        return mStatistics == null ? 0 : (int)mStatistics[0].getCount();
+    }
+
+    /**
+     * Gets the number of replications where every flow delivered its
+     * messages correctly
+     *
+     * @return Number of correct replications
+     */
+    public int getCorrect()
+    {
+        return mCorrect;
+    }
+
+    /**
+     * Gets the names of the aggregated metrics, the same as the columns of
+     * <code>Metrics.getColumnNames</code>
+     *
+     * @return The names
+     */
+    public List<String> getNames()
+    {
+        return mNames;
+    }
+
+    /**
+     * Gets the statistics of a metric over the replications
+     *
+     * @param name Name of the metric
+     * @return The statistics, or null if there is no metric with the name
+     */
+    public Statistics getStatistics(String name)
+    {
+        int column = mNames == null ? -1 : mNames.indexOf(name);
+
+        return column < 0 ? null : mStatistics[column];
+    }
+
+    /**
+     * Checks if the precision metric has reached the precision
+     *
+     * @return true if the confidence interval is narrow enough, false if
+     *         no precision is set
+     * @throws IllegalArgumentException If the precision metric does not exist
+     */
+    public boolean isPrecise()
+    {
+        if(precision <= 0)
+        {
+            return false;
+        }
+        Statistics statistics = this.getStatistics(precisionMetric);
+
+        if(statistics == null)
+        {
+            throw new IllegalArgumentException("unknown metric " + precisionMetric);
+        }
+        return statistics.getCount() >= minReplications && statistics.getRelativeHalfWidth() <= precision;
+    }
+
+    /**
+     * Adds the results of a replication to the statistics
+     */
+    private void add(Simulator simulator)
+    {
+        Metrics metrics = simulator.getMetrics();
+        double[] numbers = metrics.getColumnNumbers();
+
+        if(mStatistics == null)
+        {
+            mNames = metrics.getColumnNames();
+            mStatistics = new Statistics[numbers.length];
+
+            for(int i = 0; i < mStatistics.length; i++)
+            {
+                mStatistics[i] = new Statistics();
+            }
+        }
+        for(int i = 0; i < numbers.length; i++)
+        {
+            mStatistics[i].add(numbers[i]);
+        }
+        if(simulator.isCorrect())
+        {
+            mCorrect++;
+        }
+    }
+
+    /**
+     * Task that runs the replications a round at a time, and adds the
+     * results in seed order so that the statistics do not depend on which
+     * replication finishes first
+     */
+    private class Rounds extends RecursiveAction
+    {
+        private static final long serialVersionUID = 2230561408214740693L;
+        private final int mRoundSize;
+
+        Rounds(int roundSize)
+        {
+            mRoundSize = roundSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            SplittableRandom seeds = new SplittableRandom(mInput.seed);
+            int started = 0;
+
+            while(started < maxReplications)
+            {
+                List<Replication> round = new ArrayList<Replication>();
+
+                while(round.size() < mRoundSize && started < maxReplications)
+                {
+                    Input input = new Input(mInput);
+                    input.seed = seeds.nextLong();
+                    round.add(new Replication(input));
+                    started++;
+                }
+                invokeAll(round);
+
+                for(Replication replication : round)
+                {
+                    add(replication.mSimulator);
+
+                    if(isPrecise())
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Task that runs one replication
+     */
+    private static class Replication extends RecursiveAction
+    {
+        private static final long serialVersionUID = 7180360125716624519L;
+        private final Simulator mSimulator;
+
+        Replication(Input input)
+        {
+            mSimulator = new Simulator(input);
+        }
+
+        @Override
+        protected void compute()
+        {
+            mSimulator.run();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package protocolsimulator;
+
+/**
+ * Estimates the round trip time of a connection and derives the
+ * retransmission timeout from it, as described in RFC 6298 (Jacobson's
+ * algorithm with Karn's rule).<br /><br />
+ *
+ * One segment at a time is timed from when it is sent until it is
+ * acknowledged. If the timed segment is retransmitted the measurement is
+ * discarded, since the acknowledgement could belong to either transmission.
+ * Every timeout doubles the retransmission timeout until a new round trip
+ * time has been measured.<br /><br />
+ *
+ * With a fixed timeout the round trip times are still measured and traced,
+ * but the timeout is always the initial timeout.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class RttEstimator
+{
+    public static final int MIN_TIMEOUT = 1000, MAX_TIMEOUT = 60000;
+    private static final int NOT_TIMING = Integer.MIN_VALUE;
+    private final LayerSimulator mLayerSimulator;
+    private final boolean mAdaptive;
+    private double mSmoothedRtt = 0, mRttVariation = 0;
+    private int mTimeout;
+    private boolean mHasSample = false;
+    private int mTimedSequence = NOT_TIMING;
+    private long mTimedAt = 0;
+
+    /**
+     * Constructs a RttEstimator
+     *
+     * @param layers Gives the simulated time and receives the trace
+     * @param initialTimeout Timeout in ms before the first round trip time is measured
+     * @param adaptive true to derive the timeout from the round trip times,
+     *                 false to always use the initial timeout
+     */
+    public RttEstimator(LayerSimulator layers, int initialTimeout, boolean adaptive)
+    {
+        mLayerSimulator = layers;
+        mAdaptive = adaptive;
+        mTimeout = adaptive ? clamp(initialTimeout) : initialTimeout;
+    }
+
+    /**
+     * Gets the retransmission timeout
+     *
+     * @return Timeout in ms
+     */
+    public int getTimeout()
+    {
+        return mTimeout;
+    }
+
+    /**
+     * Gets the smoothed round trip time
+     *
+     * @return SRTT in ms, 0 before the first measurement
+     */
+    public double getSmoothedRtt()
+    {
+        return mSmoothedRtt;
+    }
+
+    /**
+     * Gets the round trip time variation
+     *
+     * @return RTTVAR in ms, 0 before the first measurement
+     */
+    public double getRttVariation()
+    {
+        return mRttVariation;
+    }
+
+    /**
+     * Called when a segment is sent for the first time. The segment is
+     * timed if no other segment is timed.
+     *
+     * @param sequence Sequence number of the segment
+     */
+    public void sent(int sequence)
+    {
+        if(mTimedSequence == NOT_TIMING)
+        {
+            mTimedSequence = sequence;
+            mTimedAt = mLayerSimulator.getCurrentTime();
+        }
+    }
+
+    /**
+     * Called when a segment is sent again. If it is the timed segment the
+     * measurement is discarded (Karn's rule).
+     *
+     * @param sequence Sequence number of the segment
+     */
+    public void retransmitted(int sequence)
+    {
+        if(mTimedSequence == sequence)
+        {
+            mTimedSequence = NOT_TIMING;
+        }
+    }
+
+    /**
+     * Called when a segment is acknowledged on its own
+     *
+     * @param sequence Sequence number of the acknowledged segment
+     */
+    public void acknowledged(int sequence)
+    {
+        if(mTimedSequence != NOT_TIMING && mTimedSequence == sequence)
+        {
+            this.sample();
+        }
+    }
+
+    /**
+     * Called when every segment up to a sequence number is acknowledged
+     *
+     * @param sequence Sequence number of the last acknowledged segment
+     */
+    public void acknowledgedUpTo(int sequence)
+    {
+        if(mTimedSequence != NOT_TIMING && mTimedSequence <= sequence)
+        {
+            this.sample();
+        }
+    }
+
+    /**
+     * Called when the retransmission timer expires. The measurement is
+     * discarded and an adaptive timeout is doubled.
+     */
+    public void backoff()
+    {
+        mTimedSequence = NOT_TIMING;
+
+        if(mAdaptive)
+        {
+            mTimeout = clamp(mTimeout * 2L);
+            mLayerSimulator.trace(TraceType.RtoBackoff, mTimeout, 0, 0);
+        }
+    }
+
+    private void sample()
+    {
+        long rtt = mLayerSimulator.getCurrentTime() - mTimedAt;
+
+        mTimedSequence = NOT_TIMING;
+
+        if(mHasSample)
+        {
+            mRttVariation = 0.75 * mRttVariation + 0.25 * Math.abs(mSmoothedRtt - rtt);
+            mSmoothedRtt = 0.875 * mSmoothedRtt + 0.125 * rtt;
+        }
+        else
+        {
+            mSmoothedRtt = rtt;
+            mRttVariation = rtt / 2.0;
+            mHasSample = true;
+        }
+        if(mAdaptive)
+        {
+            // The clock granularity is one ms
+            mTimeout = clamp((long)Math.ceil(mSmoothedRtt + Math.max(1, 4 * mRttVariation)));
+        }
+        mLayerSimulator.trace(TraceType.RttSample, (int)rtt, (int)Math.round(mSmoothedRtt), mTimeout);
+    }
+
+    private static int clamp(long timeout)
+    {
+        return (int)Math.min(MAX_TIMEOUT, Math.max(MIN_TIMEOUT, timeout));
+    }
+}
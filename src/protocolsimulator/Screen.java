@@ -178,14 +178,14 @@ public class Screen extends JPanel
     }
     private void animateNetworkPackets(Graphics g)
     {
-        long timeBetweenHosts = 1000;
         int distance = rightX + 70 - leftX;
         Color color = Color.YELLOW;
                 
         for(Event e : mEvents)
         {              
+            // Segments still waiting in the queue are not drawn
             double timeToArrival = e.eventTime - mCurrentTime;
-            double shareOfDistance = timeToArrival / timeBetweenHosts;            
+            double shareOfDistance = timeToArrival / Math.max(1, e.eventTime - e.extendedSegment.departureTime);            
             int distanceMade = (int)(distance - (shareOfDistance * distance));
             int packetX = 0, packetY = 0;
             boolean animate = true;
@@ -206,7 +206,7 @@ public class Screen extends JPanel
             {
                 color = Color.RED;
             }
-            animate = e.eventTime < mCurrentTime + timeBetweenHosts && !(e.extendedSegment.isLost && packetX > leftX + 220);
+            animate = e.extendedSegment.departureTime <= mCurrentTime && !(e.extendedSegment.isLost && packetX > leftX + 220);
             
             if(animate) 
             {
@@ -1,19 +1,54 @@
 package protocolsimulator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
 /**
- * Structure for messages that are sent between transport layers 
- * simulated on different host
+ * Structure for messages that are sent between transport layers
+ * simulated on different host<br /><br />
+ *
+ * On the link the segment is a sequence of bytes, see <code>encode</code>.
+ * The header is <code>HEADER_SIZE</code> bytes: sequence number (4),
+ * acknowledge number (4), payload length (2), checksum type (1), unused (1)
+ * and checksum (4), followed by the payload with one byte per character.
+ * The checksum covers the header, with the checksum field set to 0, and
+ * the payload.
  *
  * @author Thomas Ejnefjäll
- * @version 2008-02-14 
+ * @version 2008-02-14
  */
 public class Segment
-{    
+{
+    /**
+     * How the checksum is calculated. Crc32c detects every error of up to
+     * three bits in a segment, the Internet checksum (RFC 1071) misses e.g.
+     * two flipped bits that cancel each other out in the ones' complement sum.
+     */
+    public enum Checksum {Crc32c, Internet};
+
+    /** Bytes of a segment besides the payload */
+    public static final int HEADER_SIZE = 16;
+    /** Largest payload in bytes that the length field can hold */
+    public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
     public int seqNumber;
     public int ackNumber;
     public int checksum;
     public String payload = null;
     public String from;
-    
+    public Checksum checksumType = Checksum.Crc32c;
+    // Buffer and CRC of each thread, so that checksums do not allocate
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>()
+    {
+        @Override
+        protected Scratch initialValue()
+        {
+            return new Scratch();
+        }
+    };
+    // False if the length or checksum type of a received segment is invalid
+    private boolean mWellFormed = true;
+
     /**
      * Constructs a segment
      */
@@ -23,47 +58,174 @@ public class Segment
     }
     /**
      * Constructs a segment
-     *   
-     * @param from Sender     
+     *
+     * @param from Sender
      * @param seqNumber Sequence number
      * @param ackNumber Acknowledge number
      * @param payload Message
      */
     public Segment(String from, int seqNumber, int ackNumber, String payload)
-    {        
+    {
         this.from = from;
         this.seqNumber = seqNumber;
         this.ackNumber = ackNumber;
         this.payload = payload;
-        
+
         this.checksum = generateChecksum();
     }
+    private Segment(String from, int seqNumber, int ackNumber, String payload, Checksum checksumType, int checksum, boolean wellFormed)
+    {
+        this.from = from;
+        this.seqNumber = seqNumber;
+        this.ackNumber = ackNumber;
+        this.payload = payload;
+        this.checksumType = checksumType;
+        this.checksum = checksum;
+        mWellFormed = wellFormed;
+    }
+    /**
+     * Decodes a segment from its bytes on the link
+     *
+     * @param from Sender
+     * @param data The bytes from <code>encode</code>, possibly corrupted,
+     *             from the position to the limit
+     * @return The segment
+     */
+    public static Segment decode(String from, ByteBuffer data)
+    {
+        int start = data.position();
+        int length = data.remaining() - HEADER_SIZE;
+        int seqNumber = data.getInt();
+        int ackNumber = data.getInt();
+        int declaredLength = data.getShort() & 0xFFFF;
+        int type = data.get();
+
+        data.get();
+        int checksum = data.getInt();
+        String payload = new String(data.array(), data.arrayOffset() + start + HEADER_SIZE, length, StandardCharsets.ISO_8859_1);
+        boolean wellFormed = declaredLength == length && type >= 0 && type < Checksum.values().length;
+
+        data.position(start + HEADER_SIZE + length);
+        return new Segment(from, seqNumber, ackNumber, payload, wellFormed ? Checksum.values()[type] : Checksum.Crc32c, checksum, wellFormed);
+    }
+    /**
+     * Gets the size of the segment on the link
+     *
+     * @return Size in bytes
+     */
+    public int getSize()
+    {
+        return HEADER_SIZE + payload.length();
+    }
+    /**
+     * Encodes the segment as its bytes on the link
+     *
+     * @return A buffer with the bytes from position 0 to the limit
+     */
+    public ByteBuffer encode()
+    {
+        ByteBuffer data = ByteBuffer.allocate(this.getSize());
+
+        this.write(data, checksum);
+        data.flip();
+        return data;
+    }
+    /**
+     * Sets the checksum type and calculates the checksum again
+     *
+     * @param type The checksum type
+     */
+    public void setChecksumType(Checksum type)
+    {
+        if(type != checksumType)
+        {
+            checksumType = type;
+            checksum = generateChecksum();
+        }
+    }
     /**
      * Generates a checksum for the segment
-     * 
+     *
      * @return Generated checksum
      */
     private int generateChecksum()
     {
-         return seqNumber + ackNumber + payload.hashCode();
+        Scratch scratch = SCRATCH.get();
+
+        if(scratch.buffer.capacity() < this.getSize())
+        {
+            scratch.buffer = ByteBuffer.allocate(this.getSize());
+        }
+        ByteBuffer data = scratch.buffer;
+
+        data.clear();
+        this.write(data, 0);
+
+        if(checksumType == Checksum.Internet)
+        {
+            return internetChecksum(data.array(), data.position());
+        }
+        scratch.crc.reset();
+        scratch.crc.update(data.array(), 0, data.position());
+        return (int)scratch.crc.getValue();
+    }
+    private void write(ByteBuffer data, int checksum)
+    {
+        data.putInt(seqNumber);
+        data.putInt(ackNumber);
+        data.putShort((short)payload.length());
+        data.put((byte)checksumType.ordinal());
+        data.put((byte)0);
+        data.putInt(checksum);
+
+        // Characters outside ISO-8859-1 would not survive a decode
+        for(int i = 0; i < payload.length(); i++)
+        {
+            data.put((byte)payload.charAt(i));
+        }
+    }
+    private static int internetChecksum(byte[] bytes, int length)
+    {
+        int sum = 0;
+
+        for(int i = 0; i < length; i += 2)
+        {
+            int word = (bytes[i] & 0xFF) << 8;
+
+            if(i + 1 < length)
+            {
+                word |= bytes[i + 1] & 0xFF;
+            }
+            sum += word;
+            // Carries are added back in the ones' complement sum
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return ~sum & 0xFFFF;
     }
     /**
      * Checks to see if segments is correct or corrupted
-     * 
+     *
      * @return True is segment is correct
      */
     public boolean isCorrect()
     {
-        return checksum == generateChecksum();        
-    }   
+        return mWellFormed && checksum == generateChecksum();
+    }
     @Override
     public Segment clone()
     {
-        return new Segment(from, seqNumber, ackNumber, payload);       
+        // A corrupted segment stays corrupted
+        return new Segment(from, seqNumber, ackNumber, payload, checksumType, checksum, mWellFormed);
     }
     @Override
     public String toString()
     {
-        return "From: " + from + " SeqNum: " + seqNumber + " AckNum: " + ackNumber + " Message: " + payload; 
+        return "From: " + from + " SeqNum: " + seqNumber + " AckNum: " + ackNumber + " Message: " + payload;
+    }
+
+    private static class Scratch
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        final CRC32C crc = new CRC32C();
     }
-}
\ No newline at end of file
+}
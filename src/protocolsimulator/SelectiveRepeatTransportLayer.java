@@ -0,0 +1,265 @@
+package protocolsimulator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Transport layer that implements reliable transfer with Selective Repeat.
+ *
+ * The sender keeps one timer per segment in the window and only resends the
+ * segment whose timer expires. The receiver acknowledges every correct
+ * segment individually and buffers segments that arrive out of order until
+ * the missing segments have arrived, so that messages are still delivered
+ * to the application layer in order. Both hosts can send data at the same
+ * time, the ACKs are then piggybacked on the data segments going the other
+ * way, see DelayedAck.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class SelectiveRepeatTransportLayer implements TransportProtocol
+{
+    private LayerSimulator mLayerSimulator = null;
+    private String mId;
+    private int mWindowSize;
+    private RttEstimator mRttEstimator;
+    private final int mStandardAck = -1;
+
+    // Sender side
+    private int mNextSequence = 0, mBase = 0;
+    private Deque<Segment> mBuffer = new ArrayDeque<Segment>();
+    private SequenceBuffer<Segment> mWindow = new SequenceBuffer<Segment>();
+    private SequenceBuffer<Timer> mTimers = new SequenceBuffer<Timer>();
+
+    // Receiver side
+    private int mExpectedSequence = 0;
+    private SequenceBuffer<String> mReceived = new SequenceBuffer<String>();
+    private DelayedAck mDelayedAck;
+
+    /**
+     * Constructs a SelectiveRepeatTransportLayer
+     *
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layes above and below the Transport Layer
+     * @param timerValue Timer value in ms (1000 ms = 1 sec), the initial timeout if adaptiveTimer is true
+     * @param windowSize The amount of unACK:ed packets we can transmit
+     * @param adaptiveTimer true to derive the timeout from measured round trip times
+     * @param ackDelay Longest time in ms that an ACK waits for a data segment to piggyback on, 0 to send it at once
+     */
+    public SelectiveRepeatTransportLayer(String id, LayerSimulator layers, int timerValue, int windowSize, boolean adaptiveTimer,
+        int ackDelay)
+    {
+        mId = id;
+        mLayerSimulator = layers;
+        mRttEstimator = new RttEstimator(layers, timerValue, adaptiveTimer);
+        mWindowSize = windowSize;
+        mDelayedAck = new DelayedAck(id, layers, ackDelay, false);
+    }
+
+    @Override
+    public void toTransportLayer(String message)
+    {
+        Segment segment = new Segment(mId, mNextSequence + mBuffer.size(), mStandardAck, message);
+
+        mBuffer.add(segment);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " received " + segment.payload + " from application layer");
+        }
+        this.fillWindow();
+    }
+
+    @Override
+    public void toTransportLayer(Segment segment)
+    {
+        if(!segment.isCorrect())
+        {
+            mLayerSimulator.trace(TraceType.CorruptDrop, segment.seqNumber, segment.ackNumber, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " received corrupted package " + segment.toString());
+            }
+        }
+        else if(segment.payload.startsWith("ACK"))
+        {
+            this.handleAck(segment);
+        }
+        else
+        {
+            this.handlePackage(segment);
+
+            if(segment.ackNumber != mStandardAck)
+            {
+                this.handleAck(segment);
+            }
+        }
+        mDelayedAck.flush();
+    }
+
+    /**
+     * Selective Repeat only uses the timers of the segments
+     */
+    @Override
+    public void timerInterrupt()
+    {
+    }
+
+    /**
+     * Resends the segment whose timer expired, or sends the delayed ACK
+     *
+     * @param timerId Sequence number of the segment, or DelayedAck.TIMER_ID
+     */
+    @Override
+    public void timerInterrupt(int timerId)
+    {
+        if(timerId == DelayedAck.TIMER_ID)
+        {
+            mDelayedAck.timerInterrupt();
+            return;
+        }
+        Segment segment = mWindow.get(timerId);
+
+        mTimers.remove(timerId);
+        if(segment != null)
+        {
+            // Only the oldest segment backs off, a loss often expires several timers
+            if(timerId == mBase)
+            {
+                mRttEstimator.backoff();
+            }
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " timer for " + segment.payload + " expired");
+            }
+            this.send(segment, TraceType.Retransmit);
+        }
+    }
+
+    /**
+     * Moves segments from the buffer into the window as long as the window
+     * is not full
+     */
+    private void fillWindow()
+    {
+        while(mNextSequence - mBase < mWindowSize && !mBuffer.isEmpty())
+        {
+            Segment segment = mBuffer.remove();
+
+            mWindow.put(segment.seqNumber, segment);
+            mNextSequence++;
+            this.send(segment, TraceType.Send);
+        }
+    }
+
+    /**
+     * Sends a segment to the network layer and starts its timer
+     *
+     * @param segment The segment to be sent
+     * @param type Send or Retransmit, for the trace
+     */
+    private void send(Segment segment, TraceType type)
+    {
+        // The segment in the window keeps no ACK, a copy carries the pending ACK
+        segment = mDelayedAck.piggyback(segment);
+        mLayerSimulator.trace(type, segment.seqNumber, segment.ackNumber, mNextSequence - mBase);
+        if(type == TraceType.Send)
+        {
+            mRttEstimator.sent(segment.seqNumber);
+        }
+        else
+        {
+            mRttEstimator.retransmitted(segment.seqNumber);
+        }
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " sends " + segment.toString() + " to network layer");
+        }
+        mLayerSimulator.toNetworkLayer(segment);
+        mTimers.put(segment.seqNumber, mLayerSimulator.startTimer(segment.seqNumber, mRttEstimator.getTimeout()));
+    }
+
+    /**
+     * Marks the acknowledged segment and slides the window past every
+     * acknowledged segment at its start
+     *
+     * @param segment The acknowledgement
+     */
+    private void handleAck(Segment segment)
+    {
+        int sequence = segment.ackNumber;
+
+        mLayerSimulator.trace(TraceType.AckReceived, sequence, 0, 0);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " received ACK " + segment.payload + " for " + sequence);
+        }
+        if(mWindow.remove(sequence) == null)
+        {
+            // Duplicate or outside the window
+            return;
+        }
+        Timer timer = mTimers.remove(sequence);
+
+        mRttEstimator.acknowledged(sequence);
+
+        if(timer != null)
+        {
+            timer.cancel();
+        }
+        while(mBase < mNextSequence && mWindow.get(mBase) == null)
+        {
+            mBase++;
+        }
+        mWindow.setBase(mBase);
+        mTimers.setBase(mBase);
+        this.fillWindow();
+
+        if(mBase == mNextSequence && mBuffer.isEmpty())
+        {
+            mLayerSimulator.print("All packages sent and received succesfully!");
+        }
+    }
+
+    /**
+     * Acknowledges a correct data segment, buffers it if it is new and
+     * delivers all buffered messages that are now in order
+     *
+     * @param segment The data segment
+     */
+    private void handlePackage(Segment segment)
+    {
+        int sequence = segment.seqNumber;
+
+        if(sequence >= mExpectedSequence + mWindowSize)
+        {
+            mLayerSimulator.trace(TraceType.Discard, sequence, 0, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " throws away package " + segment.payload);
+            }
+            return;
+        }
+
+        // Segments below the window are acknowledged again, their ACK was
+        // lost. A segment out of order is acknowledged at once.
+        mDelayedAck.acknowledge(sequence, segment.payload, sequence != mExpectedSequence);
+
+        if(sequence >= mExpectedSequence && mReceived.get(sequence) == null)
+        {
+            mReceived.put(sequence, segment.payload);
+        }
+        String message;
+
+        while((message = mReceived.remove(mExpectedSequence)) != null)
+        {
+            mLayerSimulator.trace(TraceType.Deliver, mExpectedSequence, 0, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " sends " + message + " to application layer");
+            }
+            mLayerSimulator.toApplicationLayer(message);
+            mExpectedSequence++;
+            mReceived.setBase(mExpectedSequence);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package protocolsimulator;
+
+/**
+ * Ring buffer of values indexed by sequence number, for the segments in a
+ * sliding window. Values can be stored for sequence numbers from the base of
+ * the buffer and upwards, and the buffer grows to fit the highest sequence
+ * number stored. Getting, storing and removing a value takes constant time.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ * @param <T> Type of the values
+ */
+public class SequenceBuffer<T>
+{
+    private Object[] mSlots = new Object[16];
+    private int mBase = 0;
+    
+    /**
+     * Gets the value stored for a sequence number
+     * 
+     * @param sequence Sequence number
+     * @return The value, or null if no value is stored
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int sequence)
+    {
+        if(sequence < mBase || sequence - mBase >= mSlots.length)
+        {
+            return null;
+        }
+        return (T)mSlots[sequence & (mSlots.length - 1)];
+    }
+    /**
+     * Stores a value for a sequence number
+     * 
+     * @param sequence Sequence number, not below the base
+     * @param value The value
+     */
+    public void put(int sequence, T value)
+    {
+        if(sequence < mBase)
+        {
+            throw new IllegalArgumentException("sequence number " + sequence + " is below base " + mBase);
+        }
+        if(sequence - mBase >= mSlots.length)
+        {
+            this.grow(sequence - mBase + 1);
+        }
+        mSlots[sequence & (mSlots.length - 1)] = value;
+    }
+    /**
+     * Removes the value stored for a sequence number
+     * 
+     * @param sequence Sequence number
+     * @return The removed value, or null if no value was stored
+     */
+    public T remove(int sequence)
+    {
+        T value = this.get(sequence);
+        
+        if(value != null)
+        {
+            mSlots[sequence & (mSlots.length - 1)] = null;
+        }
+        return value;
+    }
+    /**
+     * Gets the lowest sequence number that can be stored
+     * 
+     * @return The base
+     */
+    public int getBase()
+    {
+        return mBase;
+    }
+    /**
+     * Moves the base forward, removing the values below the new base
+     * 
+     * @param base The new base
+     */
+    public void setBase(int base)
+    {
+        for(int sequence = mBase; sequence < base && sequence - mBase < mSlots.length; sequence++)
+        {
+            mSlots[sequence & (mSlots.length - 1)] = null;
+        }
+        mBase = Math.max(mBase, base);
+    }
+    
+    private void grow(int size)
+    {
+        int capacity = mSlots.length;
+        
+        while(capacity < size)
+        {
+            capacity *= 2;
+        }
+        Object[] slots = new Object[capacity];
+        
+        for(int sequence = mBase; sequence - mBase < mSlots.length; sequence++)
+        {
+            slots[sequence & (capacity - 1)] = mSlots[sequence & (mSlots.length - 1)];
+        }
+        mSlots = slots;
+    }
+}
@@ -0,0 +1,43 @@
+package protocolsimulator;
+
+import java.util.List;
+
+/**
+ * Receives the log and the animation state of a simulation. The GUI is one
+ * implementation, a simulation without a listener runs without any output.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface SimulationListener
+{
+    /**
+     * Clears the log
+     */
+    public void clearLogg();
+    
+    /**
+     * Adds text to the log
+     * 
+     * @param text The text to be added to the log
+     */
+    public void addToLogg(String text);
+    
+    /**
+     * Checks if the log is enabled. The simulation does not build any log
+     * text while the log is disabled.
+     * 
+     * @return true if text added to the log is used
+     */
+    public boolean isLoggEnabled();
+    
+    /**
+     * Animates messages and packets 
+     * 
+     * @param messagesToSend Messages waiting to be sent from application layer
+     * @param receivedMessages Messages received at application layer
+     * @param events Packets in transit to be animated
+     * @param currentTime Time for animation
+     */
+    public void animate(List<String> messagesToSend, List<String> receivedMessages, List<Event> events, long currentTime);
+}
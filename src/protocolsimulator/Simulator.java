@@ -1,8 +1,13 @@
 package protocolsimulator;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Simulates the layers above and below the transport layer
@@ -10,34 +15,130 @@ import java.util.Vector;
  * @author Thomas Ejnefjäll
  * @version 2008-02-14
  */
-public class Simulator implements LayerSimulator {
-	private GUI mLoggWindow;
-	private List<Event> mEvents = new Vector<Event>();
-	private long mTimeBetweenMessages = 700, mTimeBetweenAandB = 1000;
-	private long mLastPacketTime = 0, mLastMessageTime = 0;
-	private boolean mContinue = true;
-	private List<String> mMessagesToSend = null;
-	private List<String> mReceivedMessages = new Vector<String>();
+public class Simulator {
+	// Metrics set from the counters when the results are collected
+	private static final String[] VALUE_METRICS = { "events",
+			"eventsPerSecond", "delivered", "deliveredBytes", "goodput",
+			"goodputBytes", "segmentsSent", "dataSegments", "uniqueSegments",
+			"retransmissions", "retransmissionRatio", "queueDrops", "deliveryErrors",
+			"flows", "fairness" };
+	private SimulationListener mListener;
+	private long mCurrentTime = 0;
+	private volatile boolean mContinue = true;
+	private final Metrics mMetrics = new Metrics();
+	// The flows are divided between the partitions, and the statistics of
+	// all partitions are added to the totals when the simulation ends. With
+	// one partition it is the totals.
+	private Partition[] mPartitions;
+	private Partition mTotals;
+	private boolean mMerged = false;
+	private long mWallTime = 0;
 	private Input mSettings = null;
-	private TransportLayer mA, mB;
-	private Random mRandom = new Random();
+	// The topology, indexed by host number. The sending host of flow f is
+	// host 2f and its receiving host 2f + 1
+	private Host[] mHosts;
+	private int[] mPeers;
+	private Link[] mLinks;
+	private Flow[] mFlows;
+	private Link mLinkAB, mLinkBA;
+	private Tracer mTracer = null;
+	// Why the trace could not be written, null if it was written
+	private String mTraceError = null;
 
 	/**
-	 * Constructs a Simulator
+	 * Constructs a Simulator without any log or animation
 	 * 
 	 * @param input
 	 *            User input for the simulation
 	 */
 	public Simulator(Input input) {
+		this(input, null);
+	}
+
+	/**
+	 * Constructs a Simulator
+	 * 
+	 * @param input
+	 *            User input for the simulation
+	 * @param listener
+	 *            Receives the log and animation, or null to run without
+	 *            any output
+	 */
+	public Simulator(Input input, SimulationListener listener) {
 		mSettings = input;
-		mLoggWindow = GUI.getInstance();
-		mA = new TransportLayer("A", this, input.timerValue, input.windowSize);
-		mB = new TransportLayer("B", this, input.timerValue, input.windowSize);
-		mMessagesToSend = this.generateMessages(input.numberOfMessages);
+		mListener = listener;
+
+		// Independent streams for each direction, and within each link for
+		// each impairment, so that e.g. the corruption draws do not change
+		// which segments are lost
+		SplittableRandom random = new SplittableRandom(input.seed);
+		mLinkAB = new Link(input.linkAB, input.lossProbability,
+				input.corruptionProbability, random.split());
+		mLinkBA = new Link(input.linkBA, input.lossProbability,
+				input.corruptionProbability, random.split());
+		// The values first, so that they come first in the exported columns
+		for (String name : VALUE_METRICS) {
+			mMetrics.set(name, 0);
+		}
+		mPartitions = new Partition[Math.max(1, Math.min(input.partitions,
+				input.flows))];
+		if (mPartitions.length == 1) {
+			mPartitions[0] = new Partition(
+					createEventQueue(input.eventQueueType), mMetrics);
+			mTotals = mPartitions[0];
+		} else {
+			mTotals = new Partition(null, mMetrics);
+			for (int partition = 0; partition < mPartitions.length; partition++) {
+				mPartitions[partition] = new Partition(
+						createEventQueue(input.eventQueueType), new Metrics());
+			}
+		}
+
+		// The sending hosts share the link to the receiving hosts, and the
+		// receiving hosts the link back, so the links are the bottleneck
+		int hosts = input.flows * 2;
+
+		mHosts = new Host[hosts];
+		mPeers = new int[hosts];
+		mLinks = new Link[hosts];
+		mFlows = new Flow[input.bidirectional ? input.flows * 2 : input.flows];
+		for (int host = 0; host < hosts; host++) {
+			boolean sender = host % 2 == 0;
+			String id = (sender ? "A" : "B")
+					+ (input.flows > 1 ? String.valueOf(host / 2 + 1) : "");
+
+			// Both hosts of a flow are in the same partition
+			mHosts[host] = new Host(this, host, id, mPartitions[host / 2
+					% mPartitions.length]);
+			mPeers[host] = sender ? host + 1 : host - 1;
+			mLinks[host] = sender ? mLinkAB : mLinkBA;
+			mHosts[host].setTransportLayer(TransportProtocols.create(
+					sender ? input.protocolA : input.protocolB, id,
+					mHosts[host], input));
+		}
+		// Each flow has its own stream, so the messages of a flow do not
+		// depend on the number of flows. In a bidirectional transfer the
+		// flows back from the receiving hosts come after the other flows.
+		for (int flow = 0; flow < mFlows.length; flow++) {
+			int sender = flow < input.flows ? flow * 2
+					: (flow - input.flows) * 2 + 1;
+
+			try {
+				mFlows[flow] = new Flow(flow, mHosts[sender],
+						mHosts[mPeers[sender]], input.traffic.createSource(
+								input.numberOfMessages, input.payloadSize,
+								random.split()), new DeliveryVerifier(
+								mHosts[sender].getPartition().delay));
+			} catch (IOException e) {
+				throw new IllegalArgumentException("could not read messages: "
+						+ e.getMessage());
+			}
+		}
 	}
 
 	/**
-	 * Starts the simulation
+	 * Starts the simulation as a thread paced against the wall clock, so that
+	 * the segments in transit can be animated
 	 */
 	public void startSimulation() {
 		// Start simulation as a thread
@@ -48,26 +149,392 @@ public class Simulator implements LayerSimulator {
 		}).start();
 	}
 
-	private void simulate() {
-		mLoggWindow.clearLogg();
-		mLoggWindow.addToLogg("** Simulation started **");
+	/**
+	 * Runs the whole simulation in virtual time without pacing. The simulated
+	 * clock jumps straight to the time of the next event, and the method
+	 * returns when no events remain, the time limit of the input has been
+	 * reached or the simulation has been stopped.<br /><br />
+	 * 
+	 * With more than one partition in the input and no log or trace, the
+	 * partitions are simulated in parallel. A segment sent at time t arrives
+	 * at t + the propagation delay of its link at the earliest, so all events
+	 * from the earliest pending event up to that lookahead can be handled
+	 * without waiting for the other partitions. Each partition handles its
+	 * events in such a window in its own task, and the segments they sent are
+	 * then sent into the links in the order the sequential simulation would
+	 * have sent them, which schedules their arrivals after the window. Events
+	 * with the same time are ordered by host, see <code>Event.compareTo</code>,
+	 * so the results are the same as those of the sequential simulation. If
+	 * a link has no propagation delay the partitions are simulated one event
+	 * at a time.
+	 */
+	public void run() {
+		if (mListener != null) {
+			mListener.clearLogg();
+			mListener.addToLogg("** Simulation started (seed "
+					+ mSettings.seed + ") **");
+		}
+
+		// Nothing reads the events after they are handled, so they can be
+		// reused
+		for (Partition partition : mPartitions) {
+			partition.pool = new EventPool();
+		}
+		long start = System.nanoTime();
+		this.startClock();
 
-		long currentTime = System.currentTimeMillis();
+		if (!this.isParallel()) {
+			this.runSequential();
+		} else if (ForkJoinTask.inForkJoinPool()) {
+			// Already in a pool, e.g. of a batch run
+			this.runParallel();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(mPartitions.length);
 
-		mLastMessageTime = currentTime;
-		this.insertEvent(new Event(Event.EventType.ApplicationLayer,
-				mLastMessageTime, null));
+			try {
+				pool.invoke(ForkJoinTask.adapt(new Runnable() {
+					public void run() {
+						runParallel();
+					}
+				}));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		mWallTime = System.nanoTime() - start;
+		this.mergePartitions();
+		this.printSummary();
+		this.print("** Simlation ended **");
+		this.closeTrace();
+	}
 
-		while (mContinue) {
-			currentTime = System.currentTimeMillis();
+	/**
+	 * Traces the simulation to a binary trace file, which can be read with
+	 * TraceReader. Must be called before the simulation is started.
+	 * 
+	 * @param fileName
+	 *            Name of the trace file, replaced if it exists
+	 * @throws IOException
+	 *             If the file could not be created
+	 */
+	public void setTraceFile(String fileName) throws IOException {
+		this.closeTrace();
+		String[] ids = new String[mHosts.length];
+
+		for (Host host : mHosts) {
+			ids[host.getNumber()] = host.getId();
+		}
+		mTracer = new Tracer(fileName, ids);
+	}
+
+	/**
+	 * Gets the current simulated time
+	 * 
+	 * @return Simulated time in milliseconds since the simulation started
+	 */
+	public long getCurrentTime() {
+		return mCurrentTime;
+	}
+
+	/**
+	 * Gets the number of events handled so far
+	 * 
+	 * @return Number of handled events
+	 */
+	public long getEventsHandled() {
+		long events = 0;
+
+		for (Partition partition : mPartitions) {
+			events += partition.eventsHandled;
+		}
+		return events;
+	}
+
+	/**
+	 * Gets the number of segments sent into the channel so far
+	 * 
+	 * @return Number of segments sent by both hosts
+	 */
+	public long getSegmentsSent() {
+		long segments = 0;
+
+		for (Partition partition : mPartitions) {
+			segments += partition.segmentsSent;
+		}
+		return segments;
+	}
+
+	/**
+	 * Gets the number of segments that the transport layers have sent again
+	 * 
+	 * @return Number of retransmitted segments
+	 */
+	public long getRetransmissions() {
+		long segments = 0;
+
+		for (Partition partition : mPartitions) {
+			segments += partition.retransmissions;
+		}
+		return segments;
+	}
 
-			while (mEvents.size() > 0 && mEvents.get(0).eventTime < currentTime) {
-				this.handleEvents(mEvents.remove(0));
+	/**
+	 * Gets the number of payload bytes delivered to the receiving application
+	 * layer so far
+	 * 
+	 * @return Number of delivered bytes
+	 */
+	public long getDeliveredBytes() {
+		long bytes = 0;
+
+		for (Flow flow : mFlows) {
+			bytes += flow.getVerifier().getDeliveredBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of segments that the queues of the links have dropped
+	 * 
+	 * @return Number of dropped segments
+	 */
+	public long getQueueDrops() {
+		long segments = 0;
+
+		for (Partition partition : mPartitions) {
+			segments += partition.queueDrops;
+		}
+		return segments;
+	}
+
+	/**
+	 * Gets the number of messages the sending application layer has given to
+	 * its transport layer so far
+	 * 
+	 * @return Number of sent messages
+	 */
+	public long getGeneratedMessages() {
+		long messages = 0;
+
+		for (Flow flow : mFlows) {
+			messages += flow.getVerifier().getSent();
+		}
+		return messages;
+	}
+
+	/**
+	 * Checks if the sources have no more messages and every message has been
+	 * delivered
+	 * 
+	 * @return true if the transfers of all flows are complete
+	 */
+	public boolean isCompleted() {
+		for (Flow flow : mFlows) {
+			if (!flow.isCompleted()) {
+				return false;
 			}
-			mLoggWindow.animate(mMessagesToSend, mReceivedMessages,
-					getEventsToAnimate(), currentTime);
+		}
+		return true;
+	}
 
-			this.generateMessageEvent(currentTime);
+	/**
+	 * Gets why the trace file could not be written. Tracing stops at the
+	 * first error, but the simulation goes on.
+	 * 
+	 * @return The error, or null if the trace was written or not enabled
+	 */
+	public String getTraceError() {
+		return mTraceError;
+	}
+
+	/**
+	 * Checks if every flow so far has delivered its messages in order and
+	 * exactly once
+	 * 
+	 * @return true if there has been no delivery error
+	 */
+	public boolean isCorrect() {
+		for (Flow flow : mFlows) {
+			if (!flow.getVerifier().isCorrect()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the first divergence from the sent messages, of the first flow
+	 * that has one
+	 * 
+	 * @return A description of the error, or null if there is none
+	 */
+	public String getDivergence() {
+		for (Flow flow : mFlows) {
+			if (!flow.getVerifier().isCorrect()) {
+				return (mFlows.length > 1 ? flow.getReceiver().getId() + ": "
+						: "") + flow.getVerifier().getDivergence();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of messages delivered to the receiving application
+	 * layer so far
+	 * 
+	 * @return Number of delivered messages
+	 */
+	public long getDeliveredMessages() {
+		long messages = 0;
+
+		for (Flow flow : mFlows) {
+			messages += flow.getVerifier().getDelivered();
+		}
+		return messages;
+	}
+
+	/**
+	 * Gets the metrics of the simulation, with the values that are derived
+	 * from the counters, e.g. goodput, updated to the current time. The
+	 * metrics are:<br />
+	 * <code>events</code>, <code>eventsPerSecond</code> events handled in
+	 * total and per second of wall clock time<br />
+	 * <code>delivered</code>, <code>deliveredBytes</code>,
+	 * <code>goodput</code>, <code>goodputBytes</code> messages and bytes in
+	 * total and per simulated second<br />
+	 * <code>segmentsSent</code> all segments sent into the links,
+	 * <code>dataSegments</code> data segments sent including
+	 * retransmissions, <code>uniqueSegments</code> data segments sent the
+	 * first time and <code>retransmissionRatio</code> the share of the data
+	 * segments that were retransmissions, <code>retransmissions</code> the
+ * retransmitted segments<br />
+	 * <code>queueDrops</code>, <code>deliveryErrors</code><br />
+	 * <code>flows</code> the number of flows and <code>fairness</code>
+	 * Jain's fairness index of the bytes they delivered, from 1/flows when
+	 * one flow delivered everything to 1 when all delivered as much<br />
+	 * <code>delay</code> histogram of the time in ms from when a message is
+	 * given to the sending transport layer until it is delivered<br />
+	 * <code>A.rtt</code>, <code>A.window</code> histograms of the round trip
+	 * times measured by the sending hosts and of the number of unacknowledged
+	 * segments when they send a segment, and the same for the receiving
+	 * hosts B<br />
+	 * <code>A.send</code>, <code>A.timerFire</code>, <code>A.corruptDrop</code>
+	 * etc. the number of trace records of each type for the sending hosts,
+	 * and the same for the receiving hosts B
+	 * 
+	 * @return The metrics
+	 */
+	public Metrics getMetrics() {
+		long dataSegments = 0, uniqueSegments = 0, deliveryErrors = 0;
+		double sum = 0, squares = 0;
+
+		for (Metrics.Counter[] counters : mTotals.traceCounters) {
+			uniqueSegments += counters[TraceType.Send.ordinal()].get();
+			dataSegments += counters[TraceType.Send.ordinal()].get()
+					+ counters[TraceType.Retransmit.ordinal()].get();
+		}
+		for (Flow flow : mFlows) {
+			long bytes = flow.getVerifier().getDeliveredBytes();
+
+			deliveryErrors += flow.getVerifier().getErrors();
+			sum += bytes;
+			squares += (double) bytes * bytes;
+		}
+		double seconds = mCurrentTime / 1000.0;
+		long delivered = this.getDeliveredMessages(), deliveredBytes = this
+				.getDeliveredBytes();
+
+		mMetrics.set("events", this.getEventsHandled());
+		mMetrics.set("eventsPerSecond", mWallTime > 0 ? this
+				.getEventsHandled() * 1e9 / mWallTime : 0);
+		mMetrics.set("delivered", delivered);
+		mMetrics.set("deliveredBytes", deliveredBytes);
+		mMetrics.set("goodput", seconds > 0 ? delivered / seconds : 0);
+		mMetrics.set("goodputBytes", seconds > 0 ? deliveredBytes / seconds
+				: 0);
+		mMetrics.set("segmentsSent", this.getSegmentsSent());
+		mMetrics.set("dataSegments", dataSegments);
+		mMetrics.set("uniqueSegments", uniqueSegments);
+		mMetrics.set("retransmissions", this.getRetransmissions());
+		mMetrics.set("retransmissionRatio", dataSegments > 0 ? (double) (dataSegments - uniqueSegments)
+				/ dataSegments : 0);
+		mMetrics.set("queueDrops", this.getQueueDrops());
+		mMetrics.set("deliveryErrors", deliveryErrors);
+		mMetrics.set("flows", mFlows.length);
+		// Jain's index, 1 when every flow delivered as many bytes
+		mMetrics.set("fairness", squares > 0 ? sum * sum
+				/ (mFlows.length * squares) : 1);
+		return mMetrics;
+	}
+
+	/**
+	 * Gets the verifier of the receiving application layer of the first
+	 * flow, which tells if the messages were delivered in order and exactly
+	 * once
+	 * 
+	 * @return The verifier
+	 */
+	public DeliveryVerifier getVerifier() {
+		return mFlows[0].getVerifier();
+	}
+
+	/**
+	 * Gets the verifier of the receiving application layer of a flow
+	 * 
+	 * @param flow
+	 *            Number of the flow, from 0
+	 * @return The verifier
+	 */
+	public DeliveryVerifier getVerifier(int flow) {
+		return mFlows[flow].getVerifier();
+	}
+
+	/**
+	 * Gets the number of partitions the flows are divided between
+	 * 
+	 * @return Number of partitions
+	 */
+	public int getPartitions() {
+		return mPartitions.length;
+	}
+
+	/**
+	 * Gets the number of flows, each from a sending host to a receiving host,
+	 * and in a bidirectional transfer also back from each receiving host
+	 * 
+	 * @return Number of flows
+	 */
+	public int getFlows() {
+		return mFlows.length;
+	}
+
+	private void simulate() {
+		if (mListener != null) {
+			mListener.clearLogg();
+			mListener.addToLogg("** Simulation started (seed "
+					+ mSettings.seed + ") **");
+		}
+
+		this.startClock();
+		long startTime = System.currentTimeMillis();
+
+		while (mContinue) {
+			// Simulated time follows the wall clock in the paced view
+			long currentTime = System.currentTimeMillis() - startTime;
+
+			Partition partition;
+
+			while ((partition = this.nextPartition()) != null
+					&& partition.events.peek().eventTime < currentTime) {
+				this.handleEvent(partition, partition.events.poll());
+			}
+			mCurrentTime = currentTime;
+			if (mListener != null) {
+				// Only the first flow is animated
+				mListener.animate(mFlows[0].getUpcomingMessages(), mFlows[0]
+						.getVerifier().getTail(), getEventsToAnimate(),
+						currentTime);
+			}
 
 			// Don't need to use 100 % of CPU
 			try {
@@ -75,40 +542,201 @@ public class Simulator implements LayerSimulator {
 			} catch (InterruptedException ignore) { /* Do nothing */
 			}
 		}
+		mWallTime = (System.currentTimeMillis() - startTime) * 1000000;
+		this.mergePartitions();
+		this.printSummary();
 		this.print("** Simlation ended **");
+		this.closeTrace();
 	}
 
-	private void generateMessageEvent(long currentTime) {
-		if (--mSettings.numberOfMessages > 0) {
-			mLastMessageTime += mTimeBetweenMessages;
-			this.insertEvent(new Event(Event.EventType.ApplicationLayer,
-					mLastMessageTime, null));
+	private void startClock() {
+		mCurrentTime = 0;
+		for (Flow flow : mFlows) {
+			this.generateMessageEvent(flow);
+		}
+	}
+
+	private boolean isParallel() {
+		return mPartitions.length > 1 && mListener == null && mTracer == null
+				&& this.getLookahead() > 0;
+	}
+
+	/**
+	 * Gets the shortest time from when a segment is sent until it arrives
+	 * 
+	 * @return The lookahead in ms
+	 */
+	private long getLookahead() {
+		return Math.min(mSettings.linkAB.propagationDelay,
+				mSettings.linkBA.propagationDelay);
+	}
+
+	private void runSequential() {
+		Partition partition;
+
+		while (mContinue && (partition = this.nextPartition()) != null) {
+			if (mSettings.timeLimit > 0
+					&& partition.events.peek().eventTime > mSettings.timeLimit) {
+				break;
+			}
+			Event event = partition.events.poll();
+
+			mCurrentTime = event.eventTime;
+			this.handleEvent(partition, event);
+			event.release();
+		}
+	}
+
+	/**
+	 * Gets the partition with the next event
+	 * 
+	 * @return The partition, or null if no events remain
+	 */
+	private Partition nextPartition() {
+		Partition next = null;
+
+		for (Partition partition : mPartitions) {
+			if (!partition.events.isEmpty()
+					&& (next == null || partition.events.peek().compareTo(
+							next.events.peek()) < 0)) {
+				next = partition;
+			}
+		}
+		return next;
+	}
+
+	private void runParallel() {
+		long lookahead = this.getLookahead();
+		Window[] windows = new Window[mPartitions.length];
+
+		for (int i = 0; i < windows.length; i++) {
+			mPartitions[i].sends = new Partition.SendBuffer[] {
+					new Partition.SendBuffer(), new Partition.SendBuffer() };
+			windows[i] = new Window(mPartitions[i]);
+		}
+		while (mContinue) {
+			long start = Long.MAX_VALUE;
+
+			for (Partition partition : mPartitions) {
+				if (!partition.events.isEmpty()) {
+					start = Math.min(start, partition.events.peek().eventTime);
+				}
+			}
+			if (start == Long.MAX_VALUE
+					|| (mSettings.timeLimit > 0 && start > mSettings.timeLimit)) {
+				break;
+			}
+			long end = start + lookahead;
+
+			if (mSettings.timeLimit > 0) {
+				end = Math.min(end, mSettings.timeLimit + 1);
+			}
+			for (Window window : windows) {
+				window.reinitialize();
+				window.mEnd = end;
+			}
+			ForkJoinTask.invokeAll(windows);
+
+			for (int side = 0; side < 2; side++) {
+				this.transmitSends(side);
+			}
+		}
+		for (Partition partition : mPartitions) {
+			mCurrentTime = Math.max(mCurrentTime, partition.currentTime);
+			partition.sends = null;
+		}
+	}
+
+	/**
+	 * Sends the segments that the partitions sent during a window into a
+	 * link, in the order of the time they were sent, the key of the event
+	 * that sent them and the order the event sent them in
+	 * 
+	 * @param side
+	 *            0 for the link from the sending hosts, 1 for the link back
+	 */
+	private void transmitSends(int side) {
+		int[] positions = new int[mPartitions.length];
+
+		while (true) {
+			Partition.SendBuffer first = null;
+			int firstPartition = -1;
+
+			for (int i = 0; i < mPartitions.length; i++) {
+				Partition.SendBuffer sends = mPartitions[i].sends[side];
+
+				if (positions[i] < sends.size
+						&& (first == null || sends.isBefore(positions[i],
+								first, positions[firstPartition]))) {
+					first = sends;
+					firstPartition = i;
+				}
+			}
+			if (first == null) {
+				break;
+			}
+			int position = positions[firstPartition]++;
+
+			this.transmit(mHosts[first.hosts[position]],
+					first.segments[position], first.times[position]);
+		}
+		for (Partition partition : mPartitions) {
+			partition.sends[side].clear();
+		}
+	}
+
+	private void mergePartitions() {
+		if (mTotals != mPartitions[0] && !mMerged) {
+			for (Partition partition : mPartitions) {
+				mMetrics.add(partition.metrics);
+			}
+			mMerged = true;
+		}
+	}
+
+	private void handleEvent(Partition partition, Event event) {
+		partition.currentTime = event.eventTime;
+		partition.eventsHandled++;
+		partition.handledKey = event.key;
+		partition.handledSends = 0;
+		this.handleEvents(partition, event);
+	}
+
+	private void generateMessageEvent(Flow flow) {
+		if (flow.hasNextMessage()) {
+			Event event = this.schedule(flow.getSender(),
+					Event.EventType.ApplicationLayer, flow.getNextTime(), null);
+
+			event.flow = flow.getNumber();
 		}
 	}
 
 	private List<Event> getEventsToAnimate() {
 		List<Event> animatedEvents = new Vector<Event>();
 
-		for (Event e : mEvents) {
-			if (e.eventType == Event.EventType.NetworkLayer) {
-				animatedEvents.add(e);
+		for (Partition partition : mPartitions) {
+			for (Event e : partition.events) {
+				if (e.eventType == Event.EventType.NetworkLayer) {
+					animatedEvents.add(e);
+				}
 			}
 		}
 		return animatedEvents;
 	}
 
-	private void handleEvents(Event event) {
+	private void handleEvents(Partition partition, Event event) {
 		if (event.eventType == Event.EventType.ApplicationLayer) {
-			mA.toTransportLayer(mMessagesToSend.remove(0));
+			Flow flow = mFlows[event.flow];
+
+			flow.getSender().getTransportLayer().toTransportLayer(
+					flow.nextMessage(partition.currentTime));
+			this.generateMessageEvent(flow);
 		} else if (event.eventType == Event.EventType.NetworkLayer
 				&& !event.extendedSegment.isLost) {
-			if (event.extendedSegment.segment.from.equals("A")) {
-				mB.toTransportLayer(event.extendedSegment.segment);
-			} else if (event.extendedSegment.segment.from.equals("B")) {
-				mA.toTransportLayer(event.extendedSegment.segment);
-			}
+			mHosts[event.extendedSegment.destination].getTransportLayer()
+					.toTransportLayer(event.extendedSegment.segment);
 		} else if (event.eventType == Event.EventType.TimerInterrupt) {
-			mA.timerInterrupt();
+			event.timer.getHost().timerInterrupt(event.timer);
 		}
 	}
 
@@ -119,124 +747,225 @@ public class Simulator implements LayerSimulator {
 		mContinue = false;
 	}
 
-	@Override
-	public void print(String text) {
-		mLoggWindow.addToLogg(text);
+	void print(String text) {
+		if (this.isPrintEnabled()) {
+			mListener.addToLogg(text);
+		}
 	}
 
-	@Override
-	public void startTimer(int time) {
-		this.resetTimer();
-		long eventTime = System.currentTimeMillis() + time;
-		this.insertEvent(new Event(Event.EventType.TimerInterrupt, eventTime,
-				null));
-	}
+	void trace(TraceType type, int host, int first, int second, int third) {
+		Partition partition = mHosts[host].getPartition();
+		int side = host % 2;
 
-	@Override
-	public boolean isTimerActive() {
-		boolean isActive = false;
+		partition.traceCounters[side][type.ordinal()].increment();
 
-		for (Event e : mEvents) {
-			if (e.eventType == Event.EventType.TimerInterrupt) {
-				isActive = true;
-				break;
+		if (type == TraceType.Retransmit) {
+			partition.retransmissions++;
+		}
+		if (type == TraceType.Send || type == TraceType.Retransmit) {
+			partition.window[side].record(third);
+		} else if (type == TraceType.RttSample) {
+			partition.rtt[side].record(first);
+		}
+		if (mTracer != null) {
+			try {
+				mTracer.record(partition.currentTime, type, host, first,
+						second, third);
+			} catch (IOException e) {
+				this.traceFailed(e);
 			}
 		}
-		return isActive;
 	}
 
-	@Override
-	public void resetTimer() {
-		for (Event e : mEvents) {
-			if (e.eventType == Event.EventType.TimerInterrupt) {
-				mEvents.remove(e);
-				break;
+	private void printSummary() {
+		if (!this.isPrintEnabled()) {
+			return;
+		}
+		Metrics metrics = this.getMetrics();
+		Histogram delay = mMetrics.histogram("delay");
+
+		this.print(String.format("Delivered %d messages (%d bytes) in %d ms,"
+				+ " goodput %.2f messages/s", this.getDeliveredMessages(),
+				this.getDeliveredBytes(), mCurrentTime,
+				metrics.getValue("goodput")));
+		if (mFlows.length > 1) {
+			this.print(String.format("Flows %d, fairness %.3f", mFlows.length,
+					metrics.getValue("fairness")));
+		}
+		this.print(String.format("Data segments %d (%d unique),"
+				+ " retransmission ratio %.3f, queue drops %d",
+				(long) metrics.getValue("dataSegments"),
+				(long) metrics.getValue("uniqueSegments"),
+				metrics.getValue("retransmissionRatio"), this.getQueueDrops()));
+		this.print(String.format("Delay ms: mean %.0f, p50 %d, p99 %d, max %d",
+				delay.getMean(), delay.getPercentile(50),
+				delay.getPercentile(99), delay.getMax()));
+		this.print(String.format("Timeouts A %d B %d, corrupt drops A %d B %d",
+				(long) metrics.getValue("A.timerFire"),
+				(long) metrics.getValue("B.timerFire"),
+				(long) metrics.getValue("A.corruptDrop"),
+				(long) metrics.getValue("B.corruptDrop")));
+		if (!this.isCorrect()) {
+			this.print("Delivery errors "
+					+ (long) metrics.getValue("deliveryErrors") + ", first: "
+					+ this.getDivergence());
+		}
+	}
+
+	private void closeTrace() {
+		if (mTracer != null) {
+			try {
+				mTracer.close();
+			} catch (IOException e) {
+				this.traceFailed(e);
 			}
+			mTracer = null;
 		}
 	}
 
-	@Override
-	public void toApplicationLayer(String message) {
-		mReceivedMessages.add(message);
+	private void traceFailed(IOException e) {
+		// Tracing is stopped but the simulation goes on
+		mTracer = null;
+		mTraceError = e.getMessage();
+		this.print("Trace could not be written: " + e.getMessage());
+	}
+
+	boolean isPrintEnabled() {
+		return mListener != null && mListener.isLoggEnabled();
 	}
 
-	@Override
-	public void toNetworkLayer(Segment segment) {
-		long time = System.currentTimeMillis() + mTimeBetweenAandB;
-		ExtendedSegment extendedSegment = null;
-		Segment clone = segment.clone();
+	void startTimer(Timer timer, int time) {
+		Host host = timer.getHost();
 
-		// Make sure last packet from transport layer already
-		// has been sent into the channel
-		if (time < mLastPacketTime + 100) {
-			time = mLastPacketTime + 100;
-		}
-		mLastPacketTime = time;
+		timer.setEvent(this.schedule(host, Event.EventType.TimerInterrupt,
+				host.getPartition().currentTime + time, null));
+	}
 
-		boolean isCorrupted = isAffected(mSettings.corruptionProbability);
+	void toApplicationLayer(Host host, String message) {
+		// Host 2f receives the flow back from host 2f + 1
+		int flow = host.getNumber() % 2 == 1 ? host.getNumber() / 2
+				: mHosts.length / 2 + host.getNumber() / 2;
+		String error = mFlows[flow].getVerifier().delivered(
+				message, host.getPartition().currentTime);
 
-		if (isCorrupted) {
-			clone = this.corrupt(clone);
+		if (error != null) {
+			this.print("Delivery error: " + error);
 		}
-		extendedSegment = new ExtendedSegment(clone, isCorrupted, isAffected(mSettings.lossProbability));
+	}
 
-		this.insertEvent(new Event(Event.EventType.NetworkLayer, time, extendedSegment));
+	void toNetworkLayer(Host host, Segment segment) {
+		Partition partition = host.getPartition();
+
+		partition.segmentsSent++;
+		// The checksum is calculated when the segment leaves the host
+		segment.setChecksumType(mSettings.checksum);
+
+		if (partition.sends != null) {
+			// The links are shared by all partitions, so the segment is sent
+			// into its link after the window
+			partition.sends[host.getNumber() % 2].add(partition.currentTime,
+					partition.handledKey, partition.handledSends++, host
+							.getNumber(), segment);
+		} else {
+			this.transmit(host, segment, partition.currentTime);
+		}
 	}
 
-	private Segment corrupt(Segment segment) {
-		int random = mRandom.nextInt(4);
+	private void transmit(Host host, Segment segment, long sendTime) {
+		Link link = mLinks[host.getNumber()];
+		int size = segment.getSize();
 
-		switch (random) {
-		case 0:
-			segment.payload = "***";
-			break;
-		case 1:
-			segment.ackNumber = segment.ackNumber + mRandom.nextInt();
-			break;
-		case 2:
-			segment.checksum = segment.checksum + mRandom.nextInt();
-			break;
-		case 3:
-			segment.seqNumber = segment.seqNumber + mRandom.nextInt();
-			break;
+		// The segment waits until the segments before it have been sent
+		// into the link, unless the queue of the link is full
+		long departure = link.enqueue(sendTime, size);
+
+		if (departure < 0) {
+			host.getPartition().queueDrops++;
+			this.trace(TraceType.QueueDrop, host.getNumber(), segment.seqNumber,
+					segment.ackNumber, 0);
+			return;
 		}
-		return segment;
-	}
+		long time = link.getArrivalTime(departure, size);
 
-	private boolean isAffected(int probability) {
-		boolean affected = false;
+		int destination = mPeers[host.getNumber()];
 
-		if (probability >= mRandom.nextInt(100) + 1) {
-			affected = true;
+		this.propagate(link, segment, destination, departure, time);
+
+		if (link.isDuplicated()) {
+			// The copy gets its own impairments
+			this.trace(TraceType.Duplicate, host.getNumber(), segment.seqNumber,
+					segment.ackNumber, 0);
+			this.propagate(link, segment, destination, departure, time);
 		}
-		return affected;
 	}
 
-	private List<String> generateMessages(int numberOfMessages) {
-		String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-		String message = "AAA";
-		Vector<String> messages = new Vector<String>();
+	private void propagate(Link link, Segment segment, int destination,
+			long departure, long time) {
+		boolean isCorrupted = link.isCorrupted();
 
-		for (int i = 0, m = 0; i < numberOfMessages; i++) {
-			m = i % letters.length();
-			message = message.replaceAll(message.substring(0, 1),
-					letters.substring(m, m + 1));
-			messages.add(message);
+		// The transport layers never change a segment after creating it, so
+		// the receiver can get the same object unless it is corrupted
+		if (isCorrupted) {
+			segment = link.corrupt(segment);
 		}
-		return messages;
+		boolean isLost = link.isLost();
+		EventPool pool = mHosts[destination].getPartition().pool;
+		ExtendedSegment extendedSegment = pool != null ? pool.obtain(segment,
+				isCorrupted, isLost) : new ExtendedSegment(segment,
+				isCorrupted, isLost);
+		extendedSegment.departureTime = departure;
+		extendedSegment.destination = destination;
+
+		this.schedule(mHosts[destination], Event.EventType.NetworkLayer, time
+				+ link.getJitter(), extendedSegment);
 	}
 
-	private void insertEvent(Event event) {
-		boolean inserted = false;
+	/**
+	 * Adds an event for a host to the queue of its partition
+	 * 
+	 * @return The event
+	 */
+	private Event schedule(Host host, Event.EventType type, long time,
+			ExtendedSegment extendedSegment) {
+		Partition partition = host.getPartition();
+		Event event = partition.pool != null ? partition.pool.obtain(type,
+				time, extendedSegment) : new Event(type, time, extendedSegment);
+
+		event.key = host.nextKey(type);
+		partition.events.add(event);
+		return event;
+	}
 
-		for (int i = 0; i < mEvents.size() && !inserted; i++) {
-			if (event.eventTime < mEvents.get(i).eventTime) {
-				mEvents.add(i, event);
-				inserted = true;
+	/**
+	 * Task that handles the events of a partition up to the end of a window
+	 */
+	private class Window extends RecursiveAction {
+		private static final long serialVersionUID = 6002841936458310412L;
+		private final Partition mPartition;
+		private long mEnd = 0;
+
+		Window(Partition partition) {
+			mPartition = partition;
+		}
+
+		@Override
+		protected void compute() {
+			while (!mPartition.events.isEmpty()
+					&& mPartition.events.peek().eventTime < mEnd) {
+				Event event = mPartition.events.poll();
+
+				handleEvent(mPartition, event);
+				event.release();
 			}
 		}
-		if (!inserted) {
-			mEvents.add(mEvents.size(), event);
+	}
+
+	private static EventQueue createEventQueue(EventQueue.Type type) {
+		switch (type) {
+		case Calendar:
+			return new CalendarEventQueue();
+		default:
+			return new BinaryHeapEventQueue();
 		}
 	}
 }
\ No newline at end of file
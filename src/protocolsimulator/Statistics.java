@@ -0,0 +1,109 @@
+package protocolsimulator;
+
+/**
+ * Mean and variance of a sample of independent observations, e.g. the
+ * goodput of independently seeded replications of a simulation, with a 95 %
+ * confidence interval for the mean from Student's t distribution. The
+ * observations are not kept, the mean and variance are updated with
+ * Welford's method so that they stay accurate for many observations.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Statistics
+{
+    // Two-sided 95 % quantiles of Student's t distribution for 1 to 30
+    // degrees of freedom
+    private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+    private long mCount = 0;
+    private double mMean = 0, mSquares = 0;
+
+    /**
+     * Adds an observation
+     *
+     * @param value The observation
+     */
+    public void add(double value)
+    {
+        mCount++;
+        double delta = value - mMean;
+        mMean += delta / mCount;
+        mSquares += delta * (value - mMean);
+    }
+
+    /**
+     * Gets the number of observations
+     *
+     * @return Number of observations
+     */
+    public long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * Gets the mean of the observations
+     *
+     * @return The mean, 0 if there are no observations
+     */
+    public double getMean()
+    {
+        return mMean;
+    }
+
+    /**
+     * Gets the sample variance of the observations
+     *
+     * @return The variance, 0 if there are fewer than two observations
+     */
+    public double getVariance()
+    {
+        return mCount < 2 ? 0 : mSquares / (mCount - 1);
+    }
+
+    /**
+     * Gets half the width of the 95 % confidence interval for the mean, so
+     * that the interval is the mean plus or minus the half width
+     *
+     * @return The half width, infinite if there are fewer than two
+     *         observations
+     */
+    public double getHalfWidth()
+    {
+        if(mCount < 2)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        return tQuantile(mCount - 1) * Math.sqrt(this.getVariance() / mCount);
+    }
+
+    /**
+     * Gets the half width of the confidence interval relative to the mean,
+     * the precision that the replications stop at
+     *
+     * @return The relative half width, 0 if all observations are 0
+     */
+    public double getRelativeHalfWidth()
+    {
+        double halfWidth = this.getHalfWidth();
+
+        if(halfWidth == 0)
+        {
+            return 0;
+        }
+        return halfWidth / Math.abs(mMean);
+    }
+
+    private static double tQuantile(long degreesOfFreedom)
+    {
+        if(degreesOfFreedom <= T_95.length)
+        {
+            return T_95[(int)degreesOfFreedom - 1];
+        }
+        // The first terms of the expansion around the normal quantile
+        double z = 1.959964;
+        return z + (z * z * z + z) / (4 * degreesOfFreedom);
+    }
+}
@@ -0,0 +1,188 @@
+package protocolsimulator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Transport layer that implements reliable transfer with the stop-and-wait
+ * alternating bit protocol. Only one segment is in transit at a time, and
+ * the sequence number alternates between 0 and 1. Both hosts can send
+ * data at the same time, the ACKs are then piggybacked on the data segments
+ * going the other way, see DelayedAck.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class StopAndWaitTransportLayer implements TransportProtocol
+{
+    private LayerSimulator mLayerSimulator = null;
+    private String mId;
+    private RttEstimator mRttEstimator;
+    private final int mStandardAck = -1;
+    private int mSendBit = 0, mExpectedBit = 0;
+    private Deque<String> mBuffer = new ArrayDeque<String>();
+    private Segment mOutstanding = null;
+    private DelayedAck mDelayedAck;
+
+    /**
+     * Constructs a StopAndWaitTransportLayer
+     *
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layes above and below the Transport Layer
+     * @param timerValue Timer value in ms (1000 ms = 1 sec), the initial timeout if adaptiveTimer is true
+     * @param adaptiveTimer true to derive the timeout from measured round trip times
+     * @param ackDelay Longest time in ms that an ACK waits for a data segment to piggyback on, 0 to send it at once
+     */
+    public StopAndWaitTransportLayer(String id, LayerSimulator layers, int timerValue, boolean adaptiveTimer, int ackDelay)
+    {
+        mId = id;
+        mLayerSimulator = layers;
+        mRttEstimator = new RttEstimator(layers, timerValue, adaptiveTimer);
+        mDelayedAck = new DelayedAck(id, layers, ackDelay, false);
+    }
+
+    @Override
+    public void toTransportLayer(String message)
+    {
+        mBuffer.add(message);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " received " + message + " from application layer");
+        }
+        this.sendNext();
+    }
+
+    @Override
+    public void toTransportLayer(Segment segment)
+    {
+        if(!segment.isCorrect())
+        {
+            mLayerSimulator.trace(TraceType.CorruptDrop, segment.seqNumber, segment.ackNumber, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " received corrupted package " + segment.toString());
+            }
+        }
+        else if(segment.payload.startsWith("ACK"))
+        {
+            this.handleAck(segment);
+        }
+        else
+        {
+            this.handlePackage(segment);
+
+            if(segment.ackNumber != mStandardAck)
+            {
+                this.handleAck(segment);
+            }
+        }
+        mDelayedAck.flush();
+    }
+
+    /**
+     * Resends the segment in transit
+     */
+    @Override
+    public void timerInterrupt()
+    {
+        if(mOutstanding != null)
+        {
+            mRttEstimator.backoff();
+            this.send(TraceType.Retransmit);
+        }
+    }
+
+    /**
+     * Stop-and-wait only uses the single timer for its segments, and the
+     * timer of the delayed ACK
+     *
+     * @param timerId Id of the timer that expired
+     */
+    @Override
+    public void timerInterrupt(int timerId)
+    {
+        if(timerId == DelayedAck.TIMER_ID)
+        {
+            mDelayedAck.timerInterrupt();
+        }
+    }
+
+    private void sendNext()
+    {
+        if(mOutstanding == null && !mBuffer.isEmpty())
+        {
+            mOutstanding = new Segment(mId, mSendBit, mStandardAck, mBuffer.remove());
+            this.send(TraceType.Send);
+        }
+    }
+
+    private void send(TraceType type)
+    {
+        Segment segment = mDelayedAck.piggyback(mOutstanding);
+
+        mLayerSimulator.trace(type, segment.seqNumber, segment.ackNumber, 1);
+        if(type == TraceType.Send)
+        {
+            mRttEstimator.sent(mOutstanding.seqNumber);
+        }
+        else
+        {
+            mRttEstimator.retransmitted(mOutstanding.seqNumber);
+        }
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " sends " + segment.toString() + " to network layer");
+        }
+        mLayerSimulator.toNetworkLayer(segment);
+        mLayerSimulator.startTimer(mRttEstimator.getTimeout());
+    }
+
+    private void handleAck(Segment segment)
+    {
+        mLayerSimulator.trace(TraceType.AckReceived, segment.ackNumber, 0, 0);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " received ACK " + segment.payload + " for " + segment.ackNumber);
+        }
+        if(mOutstanding == null || segment.ackNumber != mSendBit)
+        {
+            // Duplicate ACK for the previous segment
+            return;
+        }
+        mLayerSimulator.resetTimer();
+        mRttEstimator.acknowledged(mSendBit);
+        mOutstanding = null;
+        mSendBit ^= 1;
+        this.sendNext();
+
+        if(mOutstanding == null)
+        {
+            mLayerSimulator.print("All packages sent and received succesfully!");
+        }
+    }
+
+    private void handlePackage(Segment segment)
+    {
+        // A duplicate is acknowledged again at once, the previous ACK was lost
+        mDelayedAck.acknowledge(segment.seqNumber, segment.payload, segment.seqNumber != mExpectedBit);
+
+        if(segment.seqNumber == mExpectedBit)
+        {
+            mLayerSimulator.trace(TraceType.Deliver, segment.seqNumber, 0, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " sends " + segment.payload + " to application layer");
+            }
+            mLayerSimulator.toApplicationLayer(segment.payload);
+            mExpectedBit ^= 1;
+        }
+        else
+        {
+            mLayerSimulator.trace(TraceType.Discard, segment.seqNumber, 0, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " throws away duplicate " + segment.payload);
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package protocolsimulator;
+
+/**
+ * Transport layer that implements a sender in the style of TCP, with
+ * cumulative acknowledgements and a congestion window. The congestion
+ * control decides how the window grows and shrinks and when a segment is
+ * retransmitted before its timeout, see CongestionControl.
+ *
+ * The receiver acknowledges every data segment with the highest sequence
+ * number received in order, so a segment that arrives out of order gives a
+ * duplicate acknowledgement. Segments that arrive out of order are buffered
+ * until the missing segments have arrived. Both hosts can send data at the
+ * same time, the ACKs are then piggybacked on the data segments going the
+ * other way, and may be delayed to wait for one, see DelayedAck.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class TcpTransportLayer implements TransportProtocol
+{
+    private LayerSimulator mLayerSimulator = null;
+    private String mId;
+    private int mWindowSize;
+    private RttEstimator mRttEstimator;
+    private final int mStandardAck = -1;
+
+    // Sender side. Segments from mBase up to mNextSequence are stored, the
+    // ones below mSendNext have been sent and the ones below mMaxSent have
+    // been sent at least once
+    private int mBase = 0, mSendNext = 0, mMaxSent = 0, mNextSequence = 0;
+    private SequenceBuffer<Segment> mSegments = new SequenceBuffer<Segment>();
+    private CongestionControl mCongestionControl;
+
+    // Receiver side
+    private int mExpectedSequence = 0;
+    private SequenceBuffer<String> mReceived = new SequenceBuffer<String>();
+    private DelayedAck mDelayedAck;
+
+    /**
+     * Constructs a TcpTransportLayer
+     *
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layes above and below the Transport Layer
+     * @param timerValue Timer value in ms (1000 ms = 1 sec), the initial timeout if adaptiveTimer is true
+     * @param windowSize The receiver window, the most unACK:ed packets we can transmit
+     * @param adaptiveTimer true to derive the timeout from measured round trip times
+     * @param congestionControl Congestion control of the sender
+     * @param ackDelay Longest time in ms that an ACK waits for a data segment to piggyback on, 0 to send it at once
+     */
+    public TcpTransportLayer(String id, LayerSimulator layers, int timerValue, int windowSize, boolean adaptiveTimer,
+        CongestionControl congestionControl, int ackDelay)
+    {
+        mId = id;
+        mLayerSimulator = layers;
+        mRttEstimator = new RttEstimator(layers, timerValue, adaptiveTimer);
+        mWindowSize = windowSize;
+        mCongestionControl = congestionControl;
+        mDelayedAck = new DelayedAck(id, layers, ackDelay, true);
+    }
+
+    @Override
+    public void toTransportLayer(String message)
+    {
+        Segment segment = new Segment(mId, mNextSequence, mStandardAck, message);
+
+        mSegments.put(mNextSequence++, segment);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " received " + segment.payload + " from application layer");
+        }
+        this.sendSegments();
+    }
+
+    @Override
+    public void toTransportLayer(Segment segment)
+    {
+        if(!segment.isCorrect())
+        {
+            mLayerSimulator.trace(TraceType.CorruptDrop, segment.seqNumber, segment.ackNumber, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " received corrupted package " + segment.toString());
+            }
+        }
+        else if(segment.payload.startsWith("ACK"))
+        {
+            this.handleAck(segment, false);
+        }
+        else
+        {
+            this.handlePackage(segment);
+
+            if(segment.ackNumber != mStandardAck)
+            {
+                this.handleAck(segment, true);
+            }
+        }
+        mDelayedAck.flush();
+    }
+
+    /**
+     * Goes back to the oldest unacknowledged segment and sends again as
+     * many segments as the reduced congestion window allows
+     */
+    @Override
+    public void timerInterrupt()
+    {
+        if(mBase == mSendNext)
+        {
+            return;
+        }
+        mCongestionControl.onTimeout(mSendNext - mBase, mMaxSent - 1);
+        mRttEstimator.backoff();
+        mSendNext = mBase;
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " timeout, window " + mCongestionControl.getWindow());
+        }
+        this.sendSegments();
+    }
+
+    /**
+     * TCP only uses the single timer for its segments, and the timer of the
+     * delayed ACK
+     *
+     * @param timerId Id of the timer that expired
+     */
+    @Override
+    public void timerInterrupt(int timerId)
+    {
+        if(timerId == DelayedAck.TIMER_ID)
+        {
+            mDelayedAck.timerInterrupt();
+        }
+    }
+
+    /**
+     * Gets the number of segments that may be unacknowledged
+     *
+     * @return The smaller of the congestion window and the receiver window
+     */
+    private int getWindow()
+    {
+        return Math.min(mWindowSize, mCongestionControl.getWindow());
+    }
+
+    /**
+     * Sends stored segments as long as the window allows
+     */
+    private void sendSegments()
+    {
+        while(mSendNext < mNextSequence && mSendNext - mBase < this.getWindow())
+        {
+            this.send(mSegments.get(mSendNext), mSendNext < mMaxSent ? TraceType.Retransmit : TraceType.Send);
+            mSendNext++;
+            mMaxSent = Math.max(mMaxSent, mSendNext);
+        }
+        if(!mLayerSimulator.isTimerActive() && mBase < mSendNext)
+        {
+            mLayerSimulator.startTimer(mRttEstimator.getTimeout());
+        }
+    }
+
+    private void send(Segment segment, TraceType type)
+    {
+        // The stored segment keeps no ACK, a copy carries the pending ACK
+        segment = mDelayedAck.piggyback(segment);
+        mLayerSimulator.trace(type, segment.seqNumber, segment.ackNumber, Math.max(mMaxSent, segment.seqNumber + 1) - mBase);
+        if(type == TraceType.Send)
+        {
+            mRttEstimator.sent(segment.seqNumber);
+        }
+        else
+        {
+            mRttEstimator.retransmitted(segment.seqNumber);
+        }
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " sends " + segment.toString() + " to network layer");
+        }
+        mLayerSimulator.toNetworkLayer(segment);
+    }
+
+    /**
+     * Handles a cumulative acknowledgement. An ACK piggybacked on a data
+     * segment is never counted as a duplicate, since the data segment is
+     * sent whether or not the ACK is new.
+     *
+     * @param segment The acknowledgement, or a data segment that carries one
+     * @param piggybacked true if the ACK is carried by a data segment
+     */
+    private void handleAck(Segment segment, boolean piggybacked)
+    {
+        int ack = segment.ackNumber;
+
+        mLayerSimulator.trace(TraceType.AckReceived, ack, 0, 0);
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " received ACK " + segment.payload + " for " + ack);
+        }
+        if(ack >= mBase && ack < mMaxSent)
+        {
+            this.handleNewAck(ack);
+        }
+        else if(ack == mBase - 1 && mBase < mSendNext && !piggybacked)
+        {
+            if(mCongestionControl.onDuplicateAck(ack, mSendNext - mBase, mMaxSent - 1))
+            {
+                this.fastRetransmit();
+            }
+            else
+            {
+                // The window may have been inflated
+                this.sendSegments();
+            }
+        }
+    }
+
+    private void handleNewAck(int ack)
+    {
+        int acked = ack - mBase + 1;
+
+        mRttEstimator.acknowledgedUpTo(ack);
+        mBase = ack + 1;
+        mSegments.setBase(mBase);
+        mSendNext = Math.max(mSendNext, mBase);
+
+        mLayerSimulator.resetTimer();
+        if(mCongestionControl.onAck(ack, acked) && mBase < mSendNext)
+        {
+            this.fastRetransmit();
+        }
+        this.sendSegments();
+
+        if(mBase == mNextSequence)
+        {
+            mLayerSimulator.print("All packages sent and received succesfully!");
+        }
+    }
+
+    /**
+     * Resends the segment the receiver is missing without waiting for the timer
+     */
+    private void fastRetransmit()
+    {
+        if(mLayerSimulator.isPrintEnabled())
+        {
+            mLayerSimulator.print(mId + " fast retransmit, window " + mCongestionControl.getWindow());
+        }
+        this.send(mSegments.get(mBase), TraceType.Retransmit);
+        mLayerSimulator.startTimer(mRttEstimator.getTimeout());
+    }
+
+    /**
+     * Buffers a correct data segment, delivers the messages that are now in
+     * order and acknowledges the highest sequence number received in order
+     *
+     * @param segment The data segment
+     */
+    private void handlePackage(Segment segment)
+    {
+        int sequence = segment.seqNumber;
+        // A segment out of order, or one that fills a gap, is acknowledged at once
+        boolean immediately = sequence != mExpectedSequence || mReceived.get(sequence + 1) != null;
+
+        if(sequence >= mExpectedSequence && sequence < mExpectedSequence + mWindowSize
+            && mReceived.get(sequence) == null)
+        {
+            mReceived.put(sequence, segment.payload);
+        }
+        else
+        {
+            mLayerSimulator.trace(TraceType.Discard, sequence, 0, 0);
+        }
+        String message;
+
+        while((message = mReceived.remove(mExpectedSequence)) != null)
+        {
+            mLayerSimulator.trace(TraceType.Deliver, mExpectedSequence, 0, 0);
+            if(mLayerSimulator.isPrintEnabled())
+            {
+                mLayerSimulator.print(mId + " sends " + message + " to application layer");
+            }
+            mLayerSimulator.toApplicationLayer(message);
+            mExpectedSequence++;
+            mReceived.setBase(mExpectedSequence);
+        }
+
+        mDelayedAck.acknowledge(mExpectedSequence - 1, segment.payload, immediately);
+    }
+}
@@ -0,0 +1,90 @@
+package protocolsimulator;
+
+/**
+ * Handle for a timer started by a transport layer. The handle can be used to
+ * check whether the timer is running and to cancel it, both in constant time.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Timer
+{
+    /**
+     * Id of the timer used by <code>startTimer(int)</code>, whose expiry is
+     * reported through <code>timerInterrupt()</code>
+     */
+    public static final int DEFAULT_ID = -1;
+    private final int mId;
+    private final Host mHost;
+    private Event mEvent = null;
+    
+    /**
+     * Constructs a Timer
+     * 
+     * @param host The host that owns the timer
+     * @param id Id that is reported when the timer expires
+     */
+    Timer(Host host, int id)
+    {
+        mHost = host;
+        mId = id;
+    }
+    /**
+     * Gets the id of the timer
+     * 
+     * @return The id given when the timer was started
+     */
+    public int getId()
+    {
+        return mId;
+    }
+    /**
+     * Checks if the timer is running
+     * 
+     * @return true if the timer has neither expired nor been cancelled
+     */
+    public boolean isActive()
+    {
+        return mEvent != null;
+    }
+    /**
+     * Cancels the timer. If the timer is not running nothing is done. The
+     * pending event stays in the event queue and is discarded when it
+     * reaches the head of the queue.
+     */
+    public void cancel()
+    {
+        if(mEvent != null)
+        {
+            mEvent.cancelled = true;
+            mEvent = null;
+        }
+    }
+    /**
+     * Gets the host that owns the timer
+     * 
+     * @return The host
+     */
+    Host getHost()
+    {
+        return mHost;
+    }
+    /**
+     * Sets the pending event of the timer
+     * 
+     * @param event Event that fires the timer
+     */
+    void setEvent(Event event)
+    {
+        this.cancel();
+        mEvent = event;
+        event.timer = this;
+    }
+    /**
+     * Marks the timer as expired when its event is handled
+     */
+    void expire()
+    {
+        mEvent = null;
+    }
+}
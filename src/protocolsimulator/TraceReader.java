@@ -0,0 +1,256 @@
+package protocolsimulator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary trace file written by Tracer, one record at a time. Run as
+ * a program it prints the trace as a human readable log.<br /><br />
+ *
+ * <code>java protocolsimulator.TraceReader run.trace</code>
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class TraceReader
+{
+    private static final TraceType[] TYPES = TraceType.values();
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(1024 * Tracer.RECORD_SIZE);
+    private String[] mHostIds;
+    private long mTime;
+    private TraceType mType;
+    private int mHost, mFirst, mSecond, mThird;
+
+    /**
+     * Program entry point for printing a trace file
+     *
+     * @param args Name of the trace file
+     */
+    public static void main(String[] args)
+    {
+        if(args.length != 1)
+        {
+            System.err.println("usage: TraceReader FILE");
+            System.exit(1);
+        }
+
+        try
+        {
+            TraceReader reader = new TraceReader(args[0]);
+
+            try
+            {
+                while(reader.next())
+                {
+                    System.out.println(reader.getTime() + "\t" + reader.format());
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch(IOException e)
+        {
+            System.err.println("could not read trace: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Constructs a TraceReader and reads the header of the file
+     *
+     * @param fileName Name of the trace file
+     * @throws IOException If the file could not be read or is not a trace file
+     */
+    public TraceReader(String fileName) throws IOException
+    {
+        mChannel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        mBuffer.limit(0);
+
+        try
+        {
+            this.readHeader();
+        }
+        catch(IOException e)
+        {
+            mChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @return true if a record was read, false at the end of the file
+     * @throws IOException If the file could not be read
+     */
+    public boolean next() throws IOException
+    {
+        if(!this.fill(Tracer.RECORD_SIZE))
+        {
+            return false;
+        }
+        mTime = mBuffer.getLong();
+        mType = TYPES[mBuffer.getShort()];
+        mHost = mBuffer.getShort() & 0xFFFF;
+        mFirst = mBuffer.getInt();
+        mSecond = mBuffer.getInt();
+        mThird = mBuffer.getInt();
+        return true;
+    }
+
+    /**
+     * Formats the current record as a line of the log
+     *
+     * @return The formatted text
+     */
+    public String format()
+    {
+        return mType.format(this.getHostId(), mFirst, mSecond, mThird);
+    }
+
+    /**
+     * Gets the simulated time of the current record
+     *
+     * @return Time in milliseconds
+     */
+    public long getTime()
+    {
+        return mTime;
+    }
+
+    /**
+     * Gets the type of the current record
+     *
+     * @return Type of the record
+     */
+    public TraceType getType()
+    {
+        return mType;
+    }
+
+    /**
+     * Gets the number of the host of the current record
+     *
+     * @return Number of the host
+     */
+    public int getHost()
+    {
+        return mHost;
+    }
+
+    /**
+     * Gets the id of the host of the current record
+     *
+     * @return Id of the host
+     */
+    public String getHostId()
+    {
+        return mHost < mHostIds.length ? mHostIds[mHost] : String.valueOf(mHost);
+    }
+
+    /**
+     * Gets the first number of the current record
+     *
+     * @return First number, see TraceType
+     */
+    public int getFirst()
+    {
+        return mFirst;
+    }
+
+    /**
+     * Gets the second number of the current record
+     *
+     * @return Second number, see TraceType
+     */
+    public int getSecond()
+    {
+        return mSecond;
+    }
+
+    /**
+     * Gets the third number of the current record
+     *
+     * @return Third number, see TraceType
+     */
+    public int getThird()
+    {
+        return mThird;
+    }
+
+    /**
+     * Closes the file
+     *
+     * @throws IOException If the file could not be closed
+     */
+    public void close() throws IOException
+    {
+        mChannel.close();
+    }
+
+    private void readHeader() throws IOException
+    {
+        if(!this.fill(8) || mBuffer.getInt() != Tracer.MAGIC)
+        {
+            throw new IOException("not a trace file");
+        }
+        int version = mBuffer.getShort();
+
+        if(version != Tracer.VERSION)
+        {
+            throw new IOException("unsupported trace version " + version);
+        }
+        mHostIds = new String[mBuffer.getShort() & 0xFFFF];
+
+        for(int i = 0; i < mHostIds.length; i++)
+        {
+            if(!this.fill(2))
+            {
+                throw new EOFException("truncated trace header");
+            }
+            byte[] name = new byte[mBuffer.getShort() & 0xFFFF];
+
+            if(!this.fill(name.length))
+            {
+                throw new EOFException("truncated trace header");
+            }
+            mBuffer.get(name);
+            mHostIds[i] = new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Makes sure that the buffer holds at least the given number of bytes
+     *
+     * @param bytes Number of bytes needed
+     * @return false if the file ended before the bytes could be read
+     * @throws IOException If the file could not be read
+     */
+    private boolean fill(int bytes) throws IOException
+    {
+        if(mBuffer.remaining() >= bytes)
+        {
+            return true;
+        }
+        mBuffer.compact();
+
+        while(mBuffer.position() < bytes)
+        {
+            if(mChannel.read(mBuffer) < 0)
+            {
+                mBuffer.flip();
+                return false;
+            }
+        }
+        mBuffer.flip();
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package protocolsimulator;
+
+/**
+ * Types of the records in a trace. Every record holds the simulated time,
+ * the host and three numbers whose meaning depends on the type.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public enum TraceType
+{
+    /** A segment is sent for the first time: sequence number, ack number, segments in the sender's window including this one */
+    Send("%s sends segment %d (ack %d, %d in window)"),
+    /** A segment is sent again: sequence number, ack number, segments in the sender's window */
+    Retransmit("%s retransmits segment %d (ack %d, %d in window)"),
+    /** An acknowledgement is sent in a segment of its own: acknowledged sequence number */
+    AckSent("%s sends ACK %d"),
+    /** A correct acknowledgement arrives: acknowledged sequence number */
+    AckReceived("%s received ACK %d"),
+    /** A corrupted segment is thrown away: sequence number, ack number as received */
+    CorruptDrop("%s received corrupted segment %d (ack %d)"),
+    /** A correct segment is thrown away: sequence number */
+    Discard("%s throws away segment %d"),
+    /** A retransmission timer expires: timer id */
+    TimerFire("%s timer %d expired"),
+    /** A message is delivered to the application layer: sequence number */
+    Deliver("%s delivers segment %d to application layer"),
+    /** A round trip time is measured: round trip time, smoothed round trip time, timeout, all in ms */
+    RttSample("%s measures RTT %d ms (srtt %d ms, timeout %d ms)"),
+    /** The retransmission timeout is doubled after a timeout: timeout in ms */
+    RtoBackoff("%s backs off timeout to %d ms"),
+    /** The congestion window changes: window in whole segments, slow start threshold, window in thousandths of a segment */
+    CongestionWindow("%s congestion window %d (ssthresh %d, cwnd %d/1000)"),
+    /** The queue of the link is full and drops a segment: sequence number, ack number */
+    QueueDrop("%s queue drops segment %d (ack %d)"),
+    /** The link delivers a segment twice: sequence number, ack number */
+    Duplicate("%s link duplicates segment %d (ack %d)"),
+    /** An acknowledgement is sent in a data segment: acknowledged sequence number, sequence number of the data segment */
+    AckPiggybacked("%s piggybacks ACK %d on segment %d"),
+    /** The timer of a delayed ACK expires before a data segment could carry the ACK, see DelayedAck */
+    AckTimerFire("%s delayed ACK timer expired");
+    
+    private final String mFormat;
+    
+    private TraceType(String format)
+    {
+        mFormat = format;
+    }
+    /**
+     * Formats a record of this type as a line of the log
+     * 
+     * @param host Id of the host
+     * @param first First number of the record
+     * @param second Second number of the record
+     * @param third Third number of the record
+     * @return The formatted text
+     */
+    public String format(String host, int first, int second, int third)
+    {
+        return String.format(mFormat, host, first, second, third);
+    }
+}
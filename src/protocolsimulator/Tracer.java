@@ -0,0 +1,169 @@
+package protocolsimulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records typed trace events of a simulation into preallocated buffers
+ * and writes them to a binary trace file. Recording an event only stores
+ * primitive values, so nothing is allocated per event. When the buffer is
+ * full it is flushed to the file through a direct byte buffer.<br /><br />
+ *
+ * The file starts with a header: the magic number <code>PSTR</code>, the
+ * format version as a short, the number of hosts as a short and the id of
+ * every host as a short length followed by UTF-8 bytes. The header is
+ * followed by records of <code>RECORD_SIZE</code> bytes: time (long), type
+ * (short), host (short) and three numbers (int). Use TraceReader to read a
+ * trace file.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class Tracer
+{
+    public static final int MAGIC = 0x50535452, VERSION = 1, RECORD_SIZE = 24;
+    private static final int DEFAULT_CAPACITY = 8192;
+    private final long[] mTimes;
+    private final short[] mTypes, mHosts;
+    private final int[] mFirst, mSecond, mThird;
+    private final ByteBuffer mBuffer;
+    private final FileChannel mChannel;
+    private int mCount = 0;
+
+    /**
+     * Constructs a Tracer that writes to a file
+     *
+     * @param fileName Name of the trace file, replaced if it exists
+     * @param hostIds Ids of the hosts, indexed by host number
+     * @throws IOException If the file could not be written
+     */
+    public Tracer(String fileName, String[] hostIds) throws IOException
+    {
+        this(fileName, hostIds, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a Tracer that writes to a file
+     *
+     * @param fileName Name of the trace file, replaced if it exists
+     * @param hostIds Ids of the hosts, indexed by host number
+     * @param capacity Number of records buffered between writes
+     * @throws IOException If the file could not be written
+     */
+    public Tracer(String fileName, String[] hostIds, int capacity) throws IOException
+    {
+        mTimes = new long[capacity];
+        mTypes = new short[capacity];
+        mHosts = new short[capacity];
+        mFirst = new int[capacity];
+        mSecond = new int[capacity];
+        mThird = new int[capacity];
+        mBuffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        mChannel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.writeHeader(hostIds);
+    }
+
+    /**
+     * Records an event
+     *
+     * @param time Simulated time of the event
+     * @param type Type of the event
+     * @param host Number of the host
+     * @param first First number, see TraceType
+     * @param second Second number, see TraceType
+     * @param third Third number, see TraceType
+     * @throws IOException If the buffer was full and could not be written
+     */
+    public void record(long time, TraceType type, int host, int first, int second, int third) throws IOException
+    {
+        if(mCount == mTimes.length)
+        {
+            this.flush();
+        }
+        mTimes[mCount] = time;
+        mTypes[mCount] = (short)type.ordinal();
+        mHosts[mCount] = (short)host;
+        mFirst[mCount] = first;
+        mSecond[mCount] = second;
+        mThird[mCount] = third;
+        mCount++;
+    }
+
+    /**
+     * Writes the buffered records to the file
+     *
+     * @throws IOException If the records could not be written
+     */
+    public void flush() throws IOException
+    {
+        mBuffer.clear();
+
+        for(int i = 0; i < mCount; i++)
+        {
+            mBuffer.putLong(mTimes[i]);
+            mBuffer.putShort(mTypes[i]);
+            mBuffer.putShort(mHosts[i]);
+            mBuffer.putInt(mFirst[i]);
+            mBuffer.putInt(mSecond[i]);
+            mBuffer.putInt(mThird[i]);
+        }
+        mBuffer.flip();
+
+        while(mBuffer.hasRemaining())
+        {
+            mChannel.write(mBuffer);
+        }
+        mCount = 0;
+    }
+
+    /**
+     * Writes the buffered records and closes the file
+     *
+     * @throws IOException If the records could not be written
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            this.flush();
+        }
+        finally
+        {
+            mChannel.close();
+        }
+    }
+
+    private void writeHeader(String[] hostIds) throws IOException
+    {
+        int size = 8;
+        byte[][] names = new byte[hostIds.length][];
+
+        for(int i = 0; i < hostIds.length; i++)
+        {
+            names[i] = hostIds[i].getBytes(StandardCharsets.UTF_8);
+            size += 2 + names[i].length;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.putInt(MAGIC);
+        header.putShort((short)VERSION);
+        header.putShort((short)hostIds.length);
+
+        for(byte[] name : names)
+        {
+            header.putShort((short)name.length);
+            header.put(name);
+        }
+        header.flip();
+
+        while(header.hasRemaining())
+        {
+            mChannel.write(header);
+        }
+    }
+}
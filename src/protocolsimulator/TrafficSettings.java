@@ -0,0 +1,145 @@
+package protocolsimulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Encapsulates how the application layer of host A produces its messages.
+ * The default settings give the traffic of the original simulator: a
+ * message every 700 ms.<br /><br />
+ *
+ * The settings can be given as a specification with the pattern and its
+ * values separated by colons:<br />
+ * <code>constant:MS</code> a message every MS ms<br />
+ * <code>poisson:MS</code> messages at random with on average MS ms between
+ * them (exponentially distributed)<br />
+ * <code>onoff:MS:ON:OFF</code> a message every MS ms during on periods, and
+ * nothing during off periods. The periods are exponentially distributed
+ * with the mean ON and OFF ms<br />
+ * <code>file:PATH</code> replays the messages in a file, where each line
+ * is the time in ms and the message separated by white space
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class TrafficSettings
+{
+    /**
+     * Available traffic patterns
+     */
+    public enum Pattern {Constant, Poisson, OnOff, File};
+
+    public Pattern pattern = Pattern.Constant;
+    public int interval = 700, onTime = 0, offTime = 0;
+    public String fileName = null;
+
+    /**
+     * Parses a specification of traffic settings. An empty specification
+     * gives the default settings.
+     *
+     * @param spec The specification, see the class description
+     * @return The settings
+     * @throws IllegalArgumentException If the specification is invalid
+     */
+    public static TrafficSettings parse(String spec)
+    {
+        TrafficSettings settings = new TrafficSettings();
+        String[] values = spec.trim().split(":");
+
+        if(spec.trim().isEmpty())
+        {
+            return settings;
+        }
+
+        try
+        {
+            if(values[0].equals("constant") && values.length == 2)
+            {
+                settings.interval = parseNumber(values[1]);
+            }
+            else if(values[0].equals("poisson") && values.length == 2)
+            {
+                settings.pattern = Pattern.Poisson;
+                settings.interval = parseNumber(values[1]);
+            }
+            else if(values[0].equals("onoff") && values.length == 4)
+            {
+                settings.pattern = Pattern.OnOff;
+                settings.interval = parseNumber(values[1]);
+                settings.onTime = parseNumber(values[2]);
+                settings.offTime = parseNumber(values[3]);
+            }
+            else if(values[0].equals("file") && values.length >= 2)
+            {
+                // The path may contain colons
+                settings.pattern = Pattern.File;
+                settings.fileName = spec.trim().substring("file:".length());
+
+                if(!new File(settings.fileName).canRead())
+                {
+                    throw new IllegalArgumentException("kan inte läsa " + settings.fileName);
+                }
+            }
+            else
+            {
+                throw new IllegalArgumentException("ogiltig trafik " + spec.trim());
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("ogiltig trafik " + spec.trim());
+        }
+        return settings;
+    }
+
+    /**
+     * Creates the source of the messages
+     *
+     * @param numberOfMessages Largest number of messages
+     * @param payloadSize Bytes in each generated message
+     * @param random Random numbers of the source
+     * @return The source
+     * @throws IOException If the file to replay could not be opened
+     */
+    public MessageSource createSource(int numberOfMessages, int payloadSize, SplittableRandom random) throws IOException
+    {
+        if(pattern == Pattern.File)
+        {
+            return new FileMessageSource(fileName, numberOfMessages);
+        }
+        return new GeneratedMessageSource(numberOfMessages, payloadSize, this, random);
+    }
+
+    /**
+     * Gets the settings as a specification that <code>parse</code> accepts
+     *
+     * @return The specification
+     */
+    @Override
+    public String toString()
+    {
+        switch(pattern)
+        {
+            case Poisson:
+                return "poisson:" + interval;
+            case OnOff:
+                return "onoff:" + interval + ":" + onTime + ":" + offTime;
+            case File:
+                return "file:" + fileName;
+            default:
+                return "constant:" + interval;
+        }
+    }
+
+    private static int parseNumber(String value)
+    {
+        int number = Integer.parseInt(value);
+
+        if(number < 0)
+        {
+            throw new NumberFormatException();
+        }
+        return number;
+    }
+}
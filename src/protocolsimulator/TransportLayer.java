@@ -31,16 +31,27 @@ import java.util.Deque;
  * @author Kristoffer Freiholtz 8703165996
  * @version 1.0
  */
-public class TransportLayer
+public class TransportLayer implements TransportProtocol
 {       
     private LayerSimulator mLayerSimulator = null;     
     private String mId;    
     private int mTimerValue, mWindowSize;
     private int mSequence = 0; 
+    // Next sequence number to deliver, the host may receive data while it sends
+    private int mExpectedSequence = 0;
+    // One more than the highest sequence number sent. After a timeout with congestion
+    // control the packages from the reduced window and up are back in mBuffer, and
+    // the ones below mMaxSent are retransmissions when they are sent again
+    private int mMaxSent = 0;
     private final int mStandardAck = -1;
+    private static final int DUPLICATE_ACK_THRESHOLD = 3;
+    private int mDuplicateAcks = 0;
     private boolean mFinished = false;
+    private RttEstimator mRttEstimator;
+    private CongestionControl mCongestionControl = null;
     private Deque<Segment> mBuffer = new ArrayDeque<Segment>();
     private Deque<Segment> mWindow = new ArrayDeque<Segment>();
+    private DelayedAck mDelayedAck;
     
     /**
      * Constructs a TransportLayer
@@ -51,11 +62,31 @@ public class TransportLayer
      * @param windowSize The amount of unACK:ed packets we can transmit 
      */
     public TransportLayer(String id, LayerSimulator layers, int timerValue, int windowSize)
+    {
+    	this(id, layers, timerValue, windowSize, false, null, 0);
+    }
+    
+    /**
+     * Constructs a TransportLayer
+     * 
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layes above and below the Transport Layer
+     * @param timerValue Timer value in ms (1000 ms = 1 sec), the initial timeout if adaptiveTimer is true
+     * @param windowSize The amount of unACK:ed packets we can transmit 
+     * @param adaptiveTimer true to derive the timeout from measured round trip times
+     * @param congestionControl Limits the window below windowSize, or null to always use windowSize
+     * @param ackDelay Longest time in ms that an ACK waits for a data segment to piggyback on, 0 to send it at once
+     */
+    public TransportLayer(String id, LayerSimulator layers, int timerValue, int windowSize, boolean adaptiveTimer,
+    		CongestionControl congestionControl, int ackDelay)
     {
     	mId = id;
     	mLayerSimulator = layers;
     	mTimerValue = timerValue;
     	mWindowSize = windowSize;
+    	mRttEstimator = new RttEstimator(layers, timerValue, adaptiveTimer);
+    	mCongestionControl = congestionControl;
+    	mDelayedAck = new DelayedAck(id, layers, ackDelay, true);
     }
     
     /**
@@ -67,8 +98,12 @@ public class TransportLayer
     {
     	Segment segment = new Segment(mId, mSequence, mStandardAck, message);
     	mBuffer.add(segment);
-    	mLayerSimulator.print(mId + " received " + segment.payload + " from application layer");
+    	if(mLayerSimulator.isPrintEnabled()){
+    		mLayerSimulator.print(mId + " received " + segment.payload + " from application layer");
+    	}
     	mSequence++;
+    	// A faster link may have emptied the window before this message arrived
+    	mFinished = false;
     	update();  	
     }
     
@@ -85,13 +120,19 @@ public class TransportLayer
 	}
 
 	/**
-	 * Updates the queues mBuffer and mWindow. Fills up mWindow to the choosen window size
+	 * Updates the queues mBuffer and mWindow. Fills up mWindow to the choosen window size,
+	 * or to the congestion window if it is smaller
 	 */
 	private void updateQueue() {
-		if(mWindow.size() < mWindowSize && !mBuffer.isEmpty()){
+		int windowSize = mWindowSize;
+		if(mCongestionControl != null){
+			windowSize = Math.min(windowSize, mCongestionControl.getWindow());
+		}
+		while(mWindow.size() < windowSize && !mBuffer.isEmpty()){
     		Segment segment = mBuffer.remove();
 			mWindow.add(segment);			 
-    		send(segment);
+    		send(segment, segment.seqNumber < mMaxSent ? TraceType.Retransmit : TraceType.Send);
+    		mMaxSent = Math.max(mMaxSent, segment.seqNumber + 1);
     		mLayerSimulator.resetTimer();
     	}
 	} 
@@ -100,9 +141,21 @@ public class TransportLayer
 	 * Send a segment to the network layer
 	 * 
 	 * @param segment The segment to be sent
+	 * @param type Send or Retransmit, for the trace
 	 */
-	private void send(Segment segment) {  	   	
-    	mLayerSimulator.print(mId + " sends " + segment.toString() + " to network layer");   	
+	private void send(Segment segment, TraceType type) {  	   	
+		// The segment in mWindow keeps no ACK, a copy carries the pending ACK
+		segment = mDelayedAck.piggyback(segment);
+    	mLayerSimulator.trace(type, segment.seqNumber, segment.ackNumber, mWindow.size());
+    	if(type == TraceType.Send){
+    		mRttEstimator.sent(segment.seqNumber);
+    	}
+    	else{
+    		mRttEstimator.retransmitted(segment.seqNumber);
+    	}
+    	if(mLayerSimulator.isPrintEnabled()){
+    		mLayerSimulator.print(mId + " sends " + segment.toString() + " to network layer");
+    	}
     	mLayerSimulator.toNetworkLayer(segment);
 	}
 	
@@ -116,8 +169,10 @@ public class TransportLayer
 				mFinished = true;
 	    	}
 			else{
-				mLayerSimulator.print(mId + " starts timer: " + mTimerValue);
-	    		mLayerSimulator.startTimer(mTimerValue);		
+				if(mLayerSimulator.isPrintEnabled()){
+					mLayerSimulator.print(mId + " starts timer: " + mRttEstimator.getTimeout());
+				}
+	    		mLayerSimulator.startTimer(mRttEstimator.getTimeout());		
 			}
 		}
 	}
@@ -133,9 +188,13 @@ public class TransportLayer
     		handleCorrectSegment(segment);   			   		    		
     	}
     	else{
-    		mLayerSimulator.print(mId + " received corrupted package " + segment.toString());  		
+    		mLayerSimulator.trace(TraceType.CorruptDrop, segment.seqNumber, segment.ackNumber, 0);
+    		if(mLayerSimulator.isPrintEnabled()){
+    			mLayerSimulator.print(mId + " received corrupted package " + segment.toString());
+    		}
     	}
     	update();
+    	mDelayedAck.flush();
     }
 
 	/**
@@ -144,12 +203,18 @@ public class TransportLayer
 	 * @param segment Segment that arrives from the Network Layer to be handled
 	 */
 	private void handleCorrectSegment(Segment segment) {
-		mLayerSimulator.print(mId + " received correct package " + segment.toString());
+		if(mLayerSimulator.isPrintEnabled()){
+			mLayerSimulator.print(mId + " received correct package " + segment.toString());
+		}
 		if(segment.payload.startsWith("ACK")){
-			handleAck(segment);
+			handleAck(segment, false);
 		}
 		else{	
 			handlePackage(segment);	
+			// A data segment from a host that also sends may carry an ACK
+			if(segment.ackNumber != mStandardAck){
+				handleAck(segment, true);
+			}
 		}
 	}
 
@@ -160,45 +225,122 @@ public class TransportLayer
 	 * @param segment Segment that arrives from the Network Layer to be handled
 	 */
 	private void handlePackage(Segment segment) {
-		mLayerSimulator.print(mId + " received message " + segment.payload);
-		if(mSequence >= segment.seqNumber){
-			mLayerSimulator.print(mId + " sends ACK " + segment.payload);
-			Segment returnSegment = new Segment(mId, mStandardAck, segment.seqNumber, "ACK " + segment.payload.charAt(0));
-			mLayerSimulator.toNetworkLayer(returnSegment);
-			if(mSequence == segment.seqNumber){ 				
+		if(mLayerSimulator.isPrintEnabled()){
+			mLayerSimulator.print(mId + " received message " + segment.payload);
+		}
+		boolean inOrder = mExpectedSequence == segment.seqNumber;
+		if(inOrder){ 				
+			if(mLayerSimulator.isPrintEnabled()){
 				mLayerSimulator.print(mId + " sends " + segment.payload + " to application layer");
-				mLayerSimulator.toApplicationLayer(segment.payload); 
-				mSequence++;
-			}	
-		} 			
-		else{
-			mLayerSimulator.print(mId + " throws away package " + segment.payload);
+			}
+			mLayerSimulator.trace(TraceType.Deliver, segment.seqNumber, 0, 0);
+			mLayerSimulator.toApplicationLayer(segment.payload); 
+			mExpectedSequence++;
+		}
+		else if(mExpectedSequence < segment.seqNumber){
+			mLayerSimulator.trace(TraceType.Discard, segment.seqNumber, 0, 0);
+			if(mLayerSimulator.isPrintEnabled()){
+				mLayerSimulator.print(mId + " throws away package " + segment.payload);
+			}
 		}
+		// The ACK is cumulative, it acknowledges every package up to mExpectedSequence - 1.
+		// A package out of order therefore gives a duplicate ACK, which is sent at once
+		mDelayedAck.acknowledge(mExpectedSequence - 1, segment.payload, !inOrder);
 	}
 
 	/**
-	 * Handle correct received acknowledgement from the network layer
+	 * Handle correct received acknowledgement from the network layer. The ACK
+	 * is cumulative, so every package in mWindow up to the ACK is removed.
+	 * An ACK for the package before the first in mWindow is a duplicate and
+	 * after DUPLICATE_ACK_THRESHOLD duplicates the first package is sent again
+	 * without waiting for the timer. An ACK piggybacked on a data segment is
+	 * never a duplicate, the data segment is sent whether or not the ACK is new
 	 * 
 	 * @param segment Segment that arrives from the Network Layer to be handled
+	 * @param piggybacked true if the ACK is carried by a data segment
 	 */
-	private void handleAck(Segment segment) {
-		mLayerSimulator.print(mId + " received ACK " + segment.payload); 
-		if(!mWindow.isEmpty()){
-			if(mWindow.getFirst().seqNumber == segment.ackNumber){
+	private void handleAck(Segment segment, boolean piggybacked) {
+		mLayerSimulator.trace(TraceType.AckReceived, segment.ackNumber, 0, 0);
+		if(mLayerSimulator.isPrintEnabled()){
+			mLayerSimulator.print(mId + " received ACK " + segment.payload);
+		}
+		if(mWindow.isEmpty()){
+			return;
+		}
+		if(mWindow.getFirst().seqNumber <= segment.ackNumber){
+			int acked = 0;
+			while(!mWindow.isEmpty() && mWindow.getFirst().seqNumber <= segment.ackNumber){
 				mWindow.removeFirst();
+				acked++;
+			}
+			// Packages put back in mBuffer by a timeout may have arrived before it
+			while(!mBuffer.isEmpty() && mBuffer.getFirst().seqNumber <= segment.ackNumber){
+				mBuffer.removeFirst();
+				acked++;
+			}
+			mDuplicateAcks = 0;
+			mRttEstimator.acknowledgedUpTo(segment.ackNumber);
+			// Restarted by updateTimer for the packages still in mWindow
+			mLayerSimulator.resetTimer();
+			if(mCongestionControl != null && mCongestionControl.onAck(segment.ackNumber, acked) && !mWindow.isEmpty()){
+				// Partial ACK in fast recovery, the next package was also lost
+				send(mWindow.getFirst(), TraceType.Retransmit);
+			}
+		}
+		else if(mWindow.getFirst().seqNumber == segment.ackNumber + 1 && !piggybacked){
+			mDuplicateAcks++;
+			boolean fastRetransmit = mDuplicateAcks == DUPLICATE_ACK_THRESHOLD;
+			if(mCongestionControl != null){
+				fastRetransmit = mCongestionControl.onDuplicateAck(segment.ackNumber, mWindow.size(), mMaxSent - 1);
+			}
+			if(fastRetransmit){
+				if(mLayerSimulator.isPrintEnabled()){
+					mLayerSimulator.print(mId + " fast retransmit of " + mWindow.getFirst().payload);
+				}
+				send(mWindow.getFirst(), TraceType.Retransmit);
+				mLayerSimulator.resetTimer();
 			}
 		}
 	}
     
     /**
-     * Called by the simulator when the specified time for the timer has passed
+     * Called by the simulator when the specified time for the timer has passed.
+     * Without congestion control every package in mWindow is sent again. With
+     * congestion control the window shrinks, so only the packages that fit in the
+     * reduced window are sent again and the rest are put back in mBuffer, to be
+     * sent by updateQueue as the ACKs open the window
      */
     public void timerInterrupt()
     {
     	mLayerSimulator.print("Timer Interrupt");
+    	mDuplicateAcks = 0;
+    	mRttEstimator.backoff();
+    	if(mCongestionControl != null && !mWindow.isEmpty()){
+    		mCongestionControl.onTimeout(mWindow.size(), mMaxSent - 1);
+    		int windowSize = Math.max(1, Math.min(mWindowSize, mCongestionControl.getWindow()));
+    		while(mWindow.size() > windowSize){
+    			mBuffer.addFirst(mWindow.removeLast());
+    		}
+    	}
     	for (Segment segment : mWindow){
-    		send(segment);
+    		send(segment, TraceType.Retransmit);
     	}
     	update();
     }
+    
+    /**
+     * Called by the simulator when a timer started with an id has expired.
+     * Go-back-N only uses the single timer besides the timer of the delayed
+     * ACK, so any other id is the same as <code>timerInterrupt()</code>
+     * 
+     * @param timerId Id of the timer that expired
+     */
+    public void timerInterrupt(int timerId)
+    {
+    	if(timerId == DelayedAck.TIMER_ID){
+    		mDelayedAck.timerInterrupt();
+    		return;
+    	}
+    	timerInterrupt();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package protocolsimulator;
+
+/**
+ * A transport layer protocol. The simulator calls these methods when data
+ * arrives from the layers above and below or when a timer expires, and the
+ * protocol answers through the LayerSimulator of its host.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface TransportProtocol
+{
+    /**
+     * Called from the Application Layer when a message is sent to an other host
+     * 
+     * @param message Message from the Application Layer
+     */
+    public void toTransportLayer(String message);
+    
+    /**
+     * Called from the Network Layer when a segment arrives
+     * 
+     * @param segment Segment that arrives from the Network Layer
+     */
+    public void toTransportLayer(Segment segment);
+    
+    /**
+     * Called by the simulator when the timer started with
+     * <code>startTimer(int)</code> has expired
+     */
+    public void timerInterrupt();
+    
+    /**
+     * Called by the simulator when a timer started with
+     * <code>startTimer(int, int)</code> has expired
+     * 
+     * @param timerId Id of the timer that expired
+     */
+    public void timerInterrupt(int timerId);
+}
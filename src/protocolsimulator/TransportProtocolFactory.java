@@ -0,0 +1,20 @@
+package protocolsimulator;
+
+/**
+ * Creates the transport layer of a host for a transport protocol
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public interface TransportProtocolFactory
+{
+    /**
+     * Creates a transport layer
+     * 
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layers above and below the transport layer
+     * @param input User input for the simulation
+     * @return The transport layer
+     */
+    public TransportProtocol create(String id, LayerSimulator layers, Input input);
+}
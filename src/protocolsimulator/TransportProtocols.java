@@ -0,0 +1,134 @@
+package protocolsimulator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the transport protocols that can be simulated. The protocols
+ * of this package are registered from the start, other protocols can be
+ * added with <code>register</code> before a simulation is constructed.
+ *
+ * @author Kristoffer Freiholtz
+ * @version 1.0
+ */
+public class TransportProtocols
+{
+    public static final String STOP_AND_WAIT = "stop-and-wait", GO_BACK_N = "go-back-n",
+        SELECTIVE_REPEAT = "selective-repeat", TCP = "tcp";
+    private static final Map<String, TransportProtocolFactory> mFactories = new LinkedHashMap<String, TransportProtocolFactory>();
+    
+    static
+    {
+        register(STOP_AND_WAIT, new TransportProtocolFactory(){
+            public TransportProtocol create(String id, LayerSimulator layers, Input input){
+                return new StopAndWaitTransportLayer(id, layers, input.timerValue, input.adaptiveTimer, input.ackDelay);
+            }
+        });
+        register(GO_BACK_N, new TransportProtocolFactory(){
+            public TransportProtocol create(String id, LayerSimulator layers, Input input){
+                return new TransportLayer(id, layers, input.timerValue, input.windowSize, input.adaptiveTimer,
+                    createCongestionControl(input.congestionControl, layers, input.windowSize), input.ackDelay);
+            }
+        });
+        register(SELECTIVE_REPEAT, new TransportProtocolFactory(){
+            public TransportProtocol create(String id, LayerSimulator layers, Input input){
+                return new SelectiveRepeatTransportLayer(id, layers, input.timerValue, input.windowSize, input.adaptiveTimer,
+                    input.ackDelay);
+            }
+        });
+        register(TCP, new TransportProtocolFactory(){
+            public TransportProtocol create(String id, LayerSimulator layers, Input input){
+                // TCP always has congestion control, Reno unless another is chosen
+                CongestionControl.Type type = input.congestionControl == CongestionControl.Type.None
+                    ? CongestionControl.Type.Reno : input.congestionControl;
+                
+                return new TcpTransportLayer(id, layers, input.timerValue, input.windowSize, input.adaptiveTimer,
+                    createCongestionControl(type, layers, input.windowSize), input.ackDelay);
+            }
+        });
+    }
+    
+    private TransportProtocols() {}
+    
+    /**
+     * Registers a transport protocol, replacing any protocol with the same name
+     * 
+     * @param name Name of the protocol
+     * @param factory Creates the transport layers of the protocol
+     */
+    public static synchronized void register(String name, TransportProtocolFactory factory)
+    {
+        mFactories.put(name, factory);
+    }
+    
+    /**
+     * Checks if a transport protocol is registered
+     * 
+     * @param name Name of the protocol
+     * @return true if the protocol is registered
+     */
+    public static synchronized boolean isRegistered(String name)
+    {
+        return mFactories.containsKey(name);
+    }
+    
+    /**
+     * Gets the names of the registered transport protocols
+     * 
+     * @return Names in the order the protocols were registered
+     */
+    public static synchronized List<String> getNames()
+    {
+        return new ArrayList<String>(mFactories.keySet());
+    }
+    
+    /**
+     * Creates the congestion control of a sender
+     * 
+     * @param type The algorithm
+     * @param layers Gives the simulated time and receives the trace
+     * @param windowSize Window of the receiver, the initial slow start threshold
+     * @return The congestion control, or null for Type.None
+     */
+    public static CongestionControl createCongestionControl(CongestionControl.Type type, LayerSimulator layers, int windowSize)
+    {
+        switch(type)
+        {
+            case Reno:
+                return new RenoCongestionControl(layers, windowSize);
+            case NewReno:
+                return new NewRenoCongestionControl(layers, windowSize);
+            case Cubic:
+                return new CubicCongestionControl(layers, windowSize);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Creates a transport layer for a registered protocol
+     * 
+     * @param name Name of the protocol
+     * @param id Id for the host (A or B)
+     * @param layers Simulates the layers above and below the transport layer
+     * @param input User input for the simulation
+     * @return The transport layer
+     * @throws IllegalArgumentException If no protocol with the name is registered
+     */
+    public static TransportProtocol create(String name, String id, LayerSimulator layers, Input input)
+    {
+        TransportProtocolFactory factory;
+        
+        synchronized(TransportProtocols.class)
+        {
+            factory = mFactories.get(name);
+        }
+        if(factory == null)
+        {
+            throw new IllegalArgumentException("unknown protocol " + name);
+        }
+        return factory.create(id, layers, input);
+    }
+}